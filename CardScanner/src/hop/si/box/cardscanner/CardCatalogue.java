@@ -0,0 +1,432 @@
+package hop.si.box.cardscanner;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The catalogue of all known cards (name, set code, collector number),
+ * read straight from a memory-mapped file. Opening it only checks the header,
+ * no matter how many cards there are, and the cards never become Java objects
+ * unless they are asked for. So startup stays fast and the heap stays flat.
+ *
+ * File format (big endian):
+ * -> header: magic "HCAT", version, card count, set count, then the offsets
+ * of the records, the sets and the string pool, the size of the pool and the
+ * fingerprint (CRC32 of everything after the header)
+ * -> records: 16 bytes per card, sorted by the UTF-8 bytes of the name:
+ * name offset (int), name length (short), set index (short), collector
+ * number offset (int), collector number length (short), unused (short)
+ * -> sets: 8 bytes per set: code offset (int), code length (int)
+ * -> string pool: all strings in UTF-8, offsets are relative to its start
+ *
+ * The file is written by the Builder, which has no Android dependencies, so
+ * the catalogue can be built on any machine (see tools/).
+ *
+ * All methods are thread-safe.
+ *
+ * @author Basti Hoffmeister
+ *
+ */
+public class CardCatalogue {
+
+	public static final int MAGIC = 0x48434154; // "HCAT"
+	public static final int VERSION = 2;
+
+	/** Size of the header, enough to read the fingerprint of a file. */
+	public static final int HEADER_SIZE = 36;
+	private static final int FINGERPRINT_OFFSET = 32;
+	private static final int RECORD_SIZE = 16;
+	private static final int SET_SIZE = 8;
+	private static final String UTF_8 = "UTF-8";
+
+	private final ByteBuffer data;
+	private final int cardCount;
+	private final int setCount;
+	private final int recordsOffset;
+	private final int setsOffset;
+	private final int stringsOffset;
+	private final int fingerprint;
+
+	private CardCatalogue(ByteBuffer data) throws IOException {
+		this.data = data;
+
+		if (data.capacity() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+			throw new IOException("Not a card catalogue");
+		}
+		if (data.getInt(4) != VERSION) {
+			throw new IOException("Unsupported catalogue version "
+					+ data.getInt(4));
+		}
+
+		cardCount = data.getInt(8);
+		setCount = data.getInt(12);
+		recordsOffset = data.getInt(16);
+		setsOffset = data.getInt(20);
+		stringsOffset = data.getInt(24);
+		int stringsLength = data.getInt(28);
+		fingerprint = data.getInt(FINGERPRINT_OFFSET);
+
+		if (cardCount < 0 || setCount < 0
+				|| recordsOffset + (long) cardCount * RECORD_SIZE > data.capacity()
+				|| setsOffset + (long) setCount * SET_SIZE > data.capacity()
+				|| stringsOffset + (long) stringsLength > data.capacity()) {
+			throw new IOException("Card catalogue is truncated");
+		}
+	}
+
+	/**
+	 * Map a catalogue file into memory. The mapping stays valid after the
+	 * file is closed and is released by the garbage collector.
+	 */
+	public static CardCatalogue open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY,
+					0, channel.size());
+			return new CardCatalogue(data);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Identifies the contents of the catalogue. Card ids (indices) are only
+	 * the same in catalogues with the same fingerprint, so everything that
+	 * stores card ids has to store the fingerprint too.
+	 */
+	public int getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * Read the fingerprint from the header of a catalogue file, e.g. to
+	 * compare an asset with an installed copy without mapping it.
+	 *
+	 * @param header
+	 *            at least the first HEADER_SIZE bytes of the file
+	 */
+	public static int readFingerprint(byte[] header) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(header);
+		if (header.length < HEADER_SIZE || buffer.getInt(0) != MAGIC
+				|| buffer.getInt(4) != VERSION) {
+			throw new IOException("Not a card catalogue");
+		}
+		return buffer.getInt(FINGERPRINT_OFFSET);
+	}
+
+	/** Number of cards. */
+	public int size() {
+		return cardCount;
+	}
+
+	/** Number of distinct sets. */
+	public int getSetCount() {
+		return setCount;
+	}
+
+	/** The name of a card. */
+	public String getName(int card) {
+		int record = record(card);
+		return string(data.getInt(record), data.getShort(record + 4) & 0xFFFF);
+	}
+
+	/** The index of the set of a card, between 0 and getSetCount() - 1. */
+	public int getSet(int card) {
+		return data.getShort(record(card) + 6) & 0xFFFF;
+	}
+
+	/** The set code of a card. */
+	public String getSetCode(int card) {
+		return getSetCodeOfSet(getSet(card));
+	}
+
+	/** The code of a set. */
+	public String getSetCodeOfSet(int set) {
+		if (set < 0 || set >= setCount) {
+			throw new IndexOutOfBoundsException("Set " + set + " of " + setCount);
+		}
+		int entry = setsOffset + set * SET_SIZE;
+		return string(data.getInt(entry), data.getInt(entry + 4));
+	}
+
+	/** The collector number of a card (may contain letters, e.g. "12a"). */
+	public String getCollectorNumber(int card) {
+		int record = record(card);
+		return string(data.getInt(record + 8),
+				data.getShort(record + 12) & 0xFFFF);
+	}
+
+	/**
+	 * The first card with exactly the given name (binary search), or -1.
+	 * Cards with the same name (reprints) follow it.
+	 */
+	public int indexOf(String name) {
+		byte[] key = utf8(name);
+		int low = 0;
+		int high = cardCount - 1;
+		int found = -1;
+
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compareName(mid, key);
+
+			if (cmp < 0) {
+				low = mid + 1;
+			} else {
+				if (cmp == 0) {
+					found = mid; // keep looking for an earlier one
+				}
+				high = mid - 1;
+			}
+		}
+
+		return found;
+	}
+
+	/**
+	 * The card with the given name, set code and collector number, or -1. E.g.
+	 * to find a card of another catalogue in this one.
+	 */
+	public int indexOf(String name, String setCode, String collectorNumber) {
+		int first = indexOf(name);
+		if (first < 0) {
+			return -1;
+		}
+		byte[] key = utf8(name);
+		for (int card = first; card < cardCount && compareName(card, key) == 0; card++) {
+			if (getSetCode(card).equals(setCode)
+					&& getCollectorNumber(card).equals(collectorNumber)) {
+				return card;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * All names in catalogue order, decoded when accessed. Their positions are
+	 * the card indices, so the list can be given to a NameIndex directly.
+	 */
+	public List<String> getNames() {
+		return new AbstractList<String>() {
+			@Override
+			public String get(int index) {
+				return getName(index);
+			}
+
+			@Override
+			public int size() {
+				return cardCount;
+			}
+		};
+	}
+
+	private int record(int card) {
+		if (card < 0 || card >= cardCount) {
+			throw new IndexOutOfBoundsException("Card " + card + " of "
+					+ cardCount);
+		}
+		return recordsOffset + card * RECORD_SIZE;
+	}
+
+	/** Compare the name of a card with UTF-8 bytes, unsigned like the sort. */
+	private int compareName(int card, byte[] key) {
+		int record = record(card);
+		int offset = stringsOffset + data.getInt(record);
+		int length = data.getShort(record + 4) & 0xFFFF;
+		int n = Math.min(length, key.length);
+
+		for (int i = 0; i < n; i++) {
+			int cmp = (data.get(offset + i) & 0xFF) - (key[i] & 0xFF);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+
+		return length - key.length;
+	}
+
+	private String string(int offset, int length) {
+		byte[] bytes = new byte[length];
+		ByteBuffer view = data.duplicate(); // own position, thread-safe
+		view.position(stringsOffset + offset);
+		view.get(bytes);
+		try {
+			return new String(bytes, UTF_8);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] utf8(String text) {
+		try {
+			return text.getBytes(UTF_8);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static int compareBytes(byte[] a, byte[] b) {
+		int n = Math.min(a.length, b.length);
+		for (int i = 0; i < n; i++) {
+			int cmp = (a[i] & 0xFF) - (b[i] & 0xFF);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return a.length - b.length;
+	}
+
+	/**
+	 * Collects cards and writes them as a catalogue file. Set codes and
+	 * collector numbers are stored once no matter how many cards share them.
+	 * Not thread-safe.
+	 */
+	public static class Builder {
+
+		private final List<byte[][]> cards = new ArrayList<byte[][]>();
+
+		/** Add a card. Strings are limited to 65535 UTF-8 bytes. */
+		public Builder add(String name, String setCode, String collectorNumber) {
+			byte[][] card = { utf8(name), utf8(setCode), utf8(collectorNumber) };
+			for (byte[] field : card) {
+				if (field.length > 0xFFFF) {
+					throw new IllegalArgumentException("String too long: "
+							+ name);
+				}
+			}
+			cards.add(card);
+			return this;
+		}
+
+		/** Number of cards added so far. */
+		public int size() {
+			return cards.size();
+		}
+
+		/** Write the catalogue to a file. */
+		public void write(File file) throws IOException {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(
+					file));
+			try {
+				write(out);
+			} finally {
+				out.close();
+			}
+		}
+
+		/** Write the catalogue to a stream. The stream is not closed. */
+		public void write(OutputStream stream) throws IOException {
+			List<byte[][]> sorted = new ArrayList<byte[][]>(cards);
+			Collections.sort(sorted, new Comparator<byte[][]>() {
+				@Override
+				public int compare(byte[][] a, byte[][] b) {
+					return compareBytes(a[0], b[0]);
+				}
+			});
+
+			ByteArrayOutputStream strings = new ByteArrayOutputStream();
+			Map<String, Integer> pooled = new HashMap<String, Integer>();
+			Map<String, Integer> sets = new HashMap<String, Integer>();
+			List<byte[]> setCodes = new ArrayList<byte[]>();
+			List<Integer> setOffsets = new ArrayList<Integer>();
+
+			ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(
+					sorted.size() * RECORD_SIZE);
+			DataOutputStream records = new DataOutputStream(recordBytes);
+
+			for (byte[][] card : sorted) {
+				String setCode = new String(card[1], UTF_8);
+				Integer set = sets.get(setCode);
+				if (set == null) {
+					set = setCodes.size();
+					if (set > 0xFFFF) {
+						throw new IOException("Too many sets");
+					}
+					sets.put(setCode, set);
+					setCodes.add(card[1]);
+					setOffsets.add(pool(strings, pooled, card[1]));
+				}
+
+				records.writeInt(append(strings, card[0]));
+				records.writeShort(card[0].length);
+				records.writeShort(set);
+				records.writeInt(pool(strings, pooled, card[2]));
+				records.writeShort(card[2].length);
+				records.writeShort(0);
+			}
+			records.flush();
+
+			ByteArrayOutputStream setBytes = new ByteArrayOutputStream(
+					setCodes.size() * SET_SIZE);
+			DataOutputStream setTable = new DataOutputStream(setBytes);
+			for (int i = 0; i < setCodes.size(); i++) {
+				setTable.writeInt(setOffsets.get(i));
+				setTable.writeInt(setCodes.get(i).length);
+			}
+			setTable.flush();
+
+			int recordsOffset = HEADER_SIZE;
+			int setsOffset = recordsOffset + recordBytes.size();
+			int stringsOffset = setsOffset + setBytes.size();
+
+			CRC32 crc = new CRC32();
+			crc.update(recordBytes.toByteArray());
+			crc.update(setBytes.toByteArray());
+			crc.update(strings.toByteArray());
+
+			DataOutputStream out = new DataOutputStream(stream);
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(sorted.size());
+			out.writeInt(setCodes.size());
+			out.writeInt(recordsOffset);
+			out.writeInt(setsOffset);
+			out.writeInt(stringsOffset);
+			out.writeInt(strings.size());
+			out.writeInt((int) crc.getValue());
+			recordBytes.writeTo(out);
+			setBytes.writeTo(out);
+			strings.writeTo(out);
+			out.flush();
+		}
+
+		/** Append a string to the pool, returning its offset. */
+		private static int append(ByteArrayOutputStream strings, byte[] bytes) {
+			int offset = strings.size();
+			strings.write(bytes, 0, bytes.length);
+			return offset;
+		}
+
+		/** Append a string to the pool unless it is there already. */
+		private static int pool(ByteArrayOutputStream strings,
+				Map<String, Integer> pooled, byte[] bytes)
+				throws UnsupportedEncodingException {
+			String key = new String(bytes, UTF_8);
+			Integer offset = pooled.get(key);
+			if (offset == null) {
+				offset = append(strings, bytes);
+				pooled.put(key, offset);
+			}
+			return offset;
+		}
+	}
+}
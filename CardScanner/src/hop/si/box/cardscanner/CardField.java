@@ -0,0 +1,89 @@
+package hop.si.box.cardscanner;
+
+import android.graphics.Rect;
+
+/**
+ * The parts of a card that are read by the OCR. The position of each field is
+ * given relative to the size of the picture, so it doesn't depend on the
+ * camera resolution. Assumes the card fills the picture with the name at the
+ * top.
+ *
+ * @author Basti Hoffmeister
+ *
+ */
+public enum CardField {
+
+	/** The name bar at the top of the card. */
+	NAME(0f, 0f, 1f, 0.12f),
+	/** The set symbol on the right end of the type line. */
+	SET_SYMBOL(0.8f, 0.54f, 1f, 0.62f),
+	/** The collector number in the bottom left corner. */
+	COLLECTOR_NUMBER(0f, 0.92f, 0.5f, 1f);
+
+	private final float left;
+	private final float top;
+	private final float right;
+	private final float bottom;
+
+	private CardField(float left, float top, float right, float bottom) {
+		this.left = left;
+		this.top = top;
+		this.right = right;
+		this.bottom = bottom;
+	}
+
+	/**
+	 * The position of the field in a picture of the given size.
+	 */
+	public Rect getBounds(int width, int height) {
+		return new Rect(Math.round(left * width), Math.round(top * height),
+				Math.round(right * width), Math.round(bottom * height));
+	}
+
+	/**
+	 * The position of the field in a frame that is shown rotated, like the
+	 * camera preview frames: the card is upright once the frame is rotated
+	 * clockwise by the given degrees (see Camera.setDisplayOrientation()).
+	 *
+	 * @param width
+	 *            width of the frame (not rotated)
+	 * @param height
+	 *            height of the frame (not rotated)
+	 * @param rotation
+	 *            0, 90, 180 or 270
+	 */
+	public Rect getBounds(int width, int height, int rotation) {
+		float l, t, r, b; // relative to the frame
+		switch (rotation) {
+		case 0:
+			l = left;
+			t = top;
+			r = right;
+			b = bottom;
+			break;
+		case 90: // the top of the card is the left side of the frame
+			l = top;
+			t = 1f - right;
+			r = bottom;
+			b = 1f - left;
+			break;
+		case 180:
+			l = 1f - right;
+			t = 1f - bottom;
+			r = 1f - left;
+			b = 1f - top;
+			break;
+		case 270: // the top of the card is the right side of the frame
+			l = 1f - bottom;
+			t = left;
+			r = 1f - top;
+			b = right;
+			break;
+		default:
+			throw new IllegalArgumentException("Rotation " + rotation
+					+ " is not a multiple of 90");
+		}
+		return new Rect(Math.round(l * width), Math.round(t * height),
+				Math.round(r * width), Math.round(b * height));
+	}
+}
@@ -1,9 +1,14 @@
 package hop.si.box.cardscanner;
 
-import hop.si.box.cardscanner.util.PictureManipulator;
-import hop.si.box.cardscanner.util.PictureSaver;
+import hop.si.box.cardscanner.match.Match;
+import hop.si.box.cardscanner.match.NameIndex;
+import hop.si.box.cardscanner.util.BitmapPool;
+import hop.si.box.cardscanner.util.PictureDecoder;
+import hop.si.box.cardscanner.util.ResolutionSelector;
+import hop.si.box.cardscanner.util.Saver;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -12,8 +17,6 @@ import java.util.List;
 
 import android.app.Activity;
 import android.content.res.AssetManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.hardware.Camera;
 import android.hardware.Camera.CameraInfo;
 import android.hardware.Camera.PictureCallback;
@@ -27,12 +30,15 @@ import android.widget.ImageView.ScaleType;
 import android.widget.Toast;
 
 import com.googlecode.tesseract.android.TessBaseAPI;
+import com.googlecode.tesseract.android.TessEnginePool;
+import com.googlecode.tesseract.android.TessProfile;
 
 /**
  * Main class for the app. 1. Starts the back-side-camera when the app is
  * started (needs the preview class for that). 2. Attaches an preview object to
  * the gui. 3. A picture is taken whenever the user touches the display.
- * (finally: A pic should be taken every x seconds.) *
+ * 4. A long touch switches to the continuous mode: a preview frame is
+ * recognized every x seconds. *
  * 
  * @author Basti Hoffmeister
  * 
@@ -49,39 +55,36 @@ public class CardScannerActivity extends Activity {
 	public static final int MEDIA_TYPE_IMAGE = 1; //
 	private String DATA_PATH = Environment.getExternalStorageDirectory()
 			.toString() + "/CardScanner/";
+	private static final String CATALOGUE = "cards.cat"; // Built by tools/BuildCatalogue
+	private static final String LANGUAGE = "deu"; // Language of the cards and the training data
+	private TessEnginePool mEngines; // Keeps the OCR engines initialized between shots
+	private TessEnginePool.Config mEngineConfig;
+	private RecognitionPipeline mPipeline; // Does the OCR in the background
+	private static final int OCR_WORKERS = 1; // Number of pictures recognized in parallel
+	private static final int OCR_QUEUE_SIZE = 2; // Number of pictures waiting for the OCR
+	private ContinuousScanner mScanner; // Recognizes preview frames in continuous mode
+	private static final long SCAN_INTERVAL = 1000; // ms between two frames in continuous mode
+	private BitmapPool mBitmaps; // Reused bitmaps for decoding the pictures
+	private PictureDecoder mDecoder; // Decodes the pictures for the OCR
+	private ResolutionSelector mResolutions = new ResolutionSelector(); // Picks the camera resolution
+	private volatile NameIndex mNames; // Known card names, null until loaded
+	private volatile CardCatalogue mCatalogue; // Set codes etc. for mNames
+	private volatile Saver mSaver; // Saves the scanned cards, null until opened
+	private boolean mDestroyed; // onDestroy() ran, guarded by mSaverLock
+	private final Object mSaverLock = new Object(); // Opening vs. closing the saver
+	private int mLastFrameCard = -1; // Card seen in the last continuous frame, -1 if none
 
 	/**
-	 * Callback to recognize whenever a picture is taken. Uses the class
-	 * PictureSaver to create a new file where the picture is stored.
+	 * Callback to recognize whenever a picture is taken. The picture is handed
+	 * to the recognition pipeline, so the preview can be restarted right away.
 	 */
 	private PictureCallback mPicture = new PictureCallback() {
 		@Override
 		public void onPictureTaken(byte[] data, Camera camera) {
 
-			File pictureFile = PictureSaver
-					.getOutputMediaFile(MEDIA_TYPE_IMAGE);
-
-			if (pictureFile == null) {
-				Log.d(LOG_TAG,
-						"Error creating media file, check storage permissions: ");
-				return;
-			}
+			mPipeline.submit(new PictureJob(data, mDecoder));
 
 			try {
-				Bitmap bitmapPicture = BitmapFactory.decodeByteArray(data, 0,
-						data.length);
-				Bitmap small = PictureManipulator.crop(bitmapPicture,
-						bitmapPicture.getWidth(), 200);
-
-				small = small.copy(Bitmap.Config.ARGB_8888, true);
-				// OCR Part
-				TessBaseAPI baseApi = new TessBaseAPI();
-				baseApi.init(DATA_PATH, "deu");
-				baseApi.setImage(small);
-				String recognizedText = baseApi.getUTF8Text();
-// Do something with the recognized text
-				Toast.makeText(getApplicationContext(), "OCRed: " + recognizedText, Toast.LENGTH_LONG).show();
-				baseApi.end();
 // Reset the preview
 				camera.startPreview();
 // Start Autofocusing
@@ -93,6 +96,52 @@ public class CardScannerActivity extends Activity {
 		}
 	};
 
+	/**
+	 * Gets the OCR results from the pipeline (on the UI thread).
+	 */
+	private RecognitionPipeline.Listener mRecognitionListener = new RecognitionPipeline.Listener() {
+		@Override
+		public void onRecognized(RecognitionPipeline.Job job,
+				RecognitionResult result) {
+			Log.d(LOG_TAG, "OCRed: " + result);
+// Calibrate the picture resolution (only pictures with some text count)
+			if (job instanceof PictureJob && result.getText().length() > 0
+					&& mResolutions.report(result.getMeanConfidence())) {
+				updatePictureSize();
+			}
+// Snap the recognized text to a known card name
+			NameIndex names = mNames;
+			CardCatalogue catalogue = mCatalogue;
+			Match match = names != null && catalogue != null ? names
+					.findBest(result.getText()) : null;
+// Pictures are saved every time, a card held in front of the camera in
+// continuous mode only once until another card (or none) shows up
+			boolean save = job instanceof PictureJob
+					|| (match != null && match.getId() != mLastFrameCard);
+			if (!(job instanceof PictureJob)) {
+				mLastFrameCard = match != null ? match.getId() : -1;
+			}
+			if (match != null) {
+				Log.d(LOG_TAG, "Matched: " + match);
+				int copies = save ? saveCard(match.getId()) : countCard(match
+						.getId());
+				Toast.makeText(getApplicationContext(),
+						"Card: " + match.getName() + " ("
+								+ catalogue.getSetCode(match.getId()) + " "
+								+ catalogue.getCollectorNumber(match.getId())
+								+ ") x" + copies, Toast.LENGTH_LONG).show();
+			} else {
+				Toast.makeText(getApplicationContext(),
+						"OCRed: " + result.getText(), Toast.LENGTH_LONG).show();
+			}
+		}
+
+		@Override
+		public void onFailed(RecognitionPipeline.Job job, Exception e) {
+			Log.d(LOG_TAG, "OCR failed: " + e.getLocalizedMessage());
+		}
+	};
+
 	/**
 	 * Initializing the app. Get the camera -> setup the preview (GUI).
 	 */
@@ -102,6 +151,8 @@ public class CardScannerActivity extends Activity {
 		setContentView(R.layout.activity_card_scanner);
 
 		copyTrainingData();
+		initEngines();
+		loadCatalogue();
 
 		initCamera();
 
@@ -122,6 +173,24 @@ public class CardScannerActivity extends Activity {
 				cam.takePicture(null, null, mPicture);
 			}
 		});
+
+		// A long touch switches the continuous scan mode on and off
+		mScanner = new ContinuousScanner(mPipeline, SCAN_INTERVAL);
+		preview.setOnLongClickListener(new View.OnLongClickListener() {
+			@Override
+			public boolean onLongClick(View v) {
+				if (mScanner.isRunning()) {
+					mScanner.stop();
+				} else {
+					mLastFrameCard = -1;
+					mScanner.start(cam, Preview.DISPLAY_ORIENTATION);
+				}
+				Toast.makeText(getApplicationContext(),
+						"Continuous scan " + (mScanner.isRunning() ? "on" : "off"),
+						Toast.LENGTH_SHORT).show();
+				return true;
+			}
+		});
 	}
 
 	/**
@@ -169,6 +238,31 @@ public class CardScannerActivity extends Activity {
 		return true;
 	}
 
+	/**
+	 * Select the picture resolution again after the resolution selector has
+	 * been calibrated. The preview size is only changed on the next start.
+	 */
+	private void updatePictureSize() {
+		if (cam == null) {
+			return;
+		}
+
+		try {
+			Camera.Parameters parameters = cam.getParameters();
+			Camera.Size pictureSize = mResolutions.select(parameters
+					.getSupportedPictureSizes());
+			if (pictureSize != null) {
+				parameters.setPictureSize(pictureSize.width, pictureSize.height);
+				cam.setParameters(parameters);
+				Log.i(LOG_TAG, "Picture resolution changed to "
+						+ pictureSize.width + "x" + pictureSize.height);
+			}
+		} catch (Exception e) {
+			Log.e(LOG_TAG, "Could not change the picture resolution "
+					+ e.getLocalizedMessage());
+		}
+	}
+
 	/**
 	 * Define additional settings for the camera.
 	 */
@@ -182,16 +276,20 @@ public class CardScannerActivity extends Activity {
 					.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE);
 		}
 
-		// Set the picture resolution to xxx (some resolution that works good
-		// for ocr)
-		List<Camera.Size> supportedResolutions = parameters
-				.getSupportedPictureSizes();
-		int resolution = 12;
-		parameters.setPictureSize(supportedResolutions.get(resolution).width,
-				supportedResolutions.get(resolution).height);
-		 Log.i("Configure Camera", "Picture resolution is " +
-		 supportedResolutions.get(resolution).width + " width and " +
-		 supportedResolutions.get(resolution).height + " height.");
+		// Use the smallest resolutions that are still good enough for the OCR
+		Camera.Size pictureSize = mResolutions.select(parameters
+				.getSupportedPictureSizes());
+		if (pictureSize != null) {
+			parameters.setPictureSize(pictureSize.width, pictureSize.height);
+			Log.i("Configure Camera", "Picture resolution is "
+					+ pictureSize.width + " width and " + pictureSize.height
+					+ " height.");
+		}
+		Camera.Size previewSize = mResolutions.select(parameters
+				.getSupportedPreviewSizes());
+		if (previewSize != null) {
+			parameters.setPreviewSize(previewSize.width, previewSize.height);
+		}
 
 		// Need to configure the orientation as else the picture orientation !=
 		// what you see.
@@ -240,9 +338,189 @@ public class CardScannerActivity extends Activity {
 	@Override
 	protected void onPause() {
 		super.onPause();
+		mScanner.stop();
 		releaseCamera();
 	}
 
+	/**
+	 * Shut down the OCR engines when the activity is gone for good.
+	 */
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		mPipeline.shutdown();
+		mEngines.close();
+		mBitmaps.clear();
+		Saver saver;
+		synchronized (mSaverLock) {
+			mDestroyed = true; // a saver opened later is closed right away
+			saver = mSaver;
+			mSaver = null;
+		}
+		if (saver != null) {
+			closeSaver(saver);
+		}
+	}
+
+	/**
+	 * Close the saver in the background: it waits for a running snapshot and
+	 * writes a full one of all counts, too slow for the UI thread with a big
+	 * collection.
+	 */
+	private void closeSaver(final Saver saver) {
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					saver.close();
+				} catch (IOException e) {
+					Log.e(LOG_TAG, "Could not save scans " + e.getLocalizedMessage());
+				}
+			}
+		}, "SaverClose").start();
+	}
+
+	/**
+	 * Create the pool of OCR engines and the pipeline using them. Loading the
+	 * training data takes a few seconds, so the first engine is initialized in
+	 * the background right away instead of when the first picture is taken.
+	 */
+	private void initEngines() {
+		mEngines = new TessEnginePool(OCR_WORKERS);
+		// Card names aren't dictionary words, so the engines can skip loading
+		// the dictionaries (less memory per engine, faster init)
+		mEngineConfig = new TessEnginePool.Config(DATA_PATH, LANGUAGE,
+				TessProfile.FAST, TessBaseAPI.PSM_SINGLE_BLOCK);
+		mBitmaps = new BitmapPool(OCR_WORKERS * CardField.values().length + 1); // a bitmap per field
+		mDecoder = new PictureDecoder(PictureDecoder.DEFAULT_TARGET_DPI,
+				mBitmaps);
+		mPipeline = new RecognitionPipeline(mEngines, mEngineConfig,
+				OCR_WORKERS, OCR_QUEUE_SIZE,
+				RecognitionPipeline.OverflowPolicy.DROP_OLDEST,
+				mRecognitionListener);
+
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					mEngines.preload(mEngineConfig, 1);
+				} catch (Exception e) {
+					Log.e(LOG_TAG, "Could not preload OCR engine " + e.getLocalizedMessage());
+				}
+			}
+		}, "EnginePreload").start();
+	}
+
+	/**
+	 * Map the card catalogue (cards.cat in the data path, copied from the
+	 * assets) and index its names in the background, then open the saved
+	 * scans. Without a catalogue the raw OCR text is shown.
+	 */
+	private void loadCatalogue() {
+		final File file = new File(DATA_PATH + CATALOGUE);
+		if (!file.exists()) {
+			Log.i(LOG_TAG, "No card catalogue at " + file);
+			return;
+		}
+
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					long start = System.currentTimeMillis();
+					CardCatalogue catalogue = CardCatalogue.open(file);
+					mNames = new NameIndex(catalogue.getNames());
+					mCatalogue = catalogue;
+					Log.i(LOG_TAG, "Indexed " + catalogue.size() + " cards in "
+							+ (System.currentTimeMillis() - start) + " ms");
+				} catch (IOException e) {
+					Log.e(LOG_TAG, "Could not load card catalogue " + e.getLocalizedMessage());
+					return;
+				}
+				openSaver(mCatalogue);
+			}
+		}, "CardCatalogue").start();
+	}
+
+	/**
+	 * Open the saved scans, a crash before may have left something to
+	 * recover. Called in the background once the catalogue is loaded, since
+	 * the scans refer to its cards. If the activity is destroyed meanwhile,
+	 * the saver is closed again, so its writer thread and file don't leak.
+	 * The user is told if the scans can't be saved or were moved aside.
+	 */
+	private void openSaver(CardCatalogue catalogue) {
+		Saver saver;
+		try {
+			synchronized (mSaverLock) {
+				if (mDestroyed) {
+					return;
+				}
+			}
+			saver = Saver.open(new File(DATA_PATH), catalogue);
+		} catch (IOException e) {
+			Log.e(LOG_TAG, "Could not open saved scans " + e.getLocalizedMessage());
+			showMessage("Scanned cards can't be saved: "
+					+ e.getLocalizedMessage());
+			return;
+		}
+		if (saver.getSetAside() != null) {
+			showMessage("The card list changed, your earlier scans were moved to "
+					+ saver.getSetAside().getName());
+		}
+
+		synchronized (mSaverLock) {
+			if (!mDestroyed) {
+				mSaver = saver;
+				return;
+			}
+		}
+		try {
+			saver.close();
+		} catch (IOException e) {
+			Log.e(LOG_TAG, "Could not close saved scans " + e.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * Show a message to the user, from any thread.
+	 */
+	private void showMessage(final String message) {
+		runOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				Toast.makeText(getApplicationContext(), message,
+						Toast.LENGTH_LONG).show();
+			}
+		});
+	}
+
+	/**
+	 * @return the number of copies of the card saved so far
+	 */
+	private int countCard(int cardId) {
+		Saver saver = mSaver;
+		return saver != null ? saver.getCollection().getCount(cardId) : 0;
+	}
+
+	/**
+	 * @return the number of copies of the card now or 0 if it wasn't saved
+	 */
+	private int saveCard(int cardId) {
+		Saver saver = mSaver;
+		if (saver == null) {
+			Log.w(LOG_TAG, "Scans not opened yet, card " + cardId + " not saved");
+			return 0;
+		}
+		try {
+			saver.add(cardId, LANGUAGE);
+			return saver.getCollection().getCount(cardId);
+		} catch (IOException e) {
+			Log.e(LOG_TAG, "Could not save card " + e.getLocalizedMessage());
+			return 0;
+		}
+	}
+
 	/**
 	 * Needed to copy the training data from the apps-asset folder to the
 	 * sd-card. Done when app starts.
@@ -279,9 +557,86 @@ public class CardScannerActivity extends Activity {
                 e.printStackTrace();
             }
         }
+
+        copyCatalogue();
 		
 	}
 
+	/**
+	 * Copy the card catalogue from the assets, unless the copy on the sdcard
+	 * is the same (same fingerprint). A replaced catalogue is kept for the
+	 * Saver as long as there are scans that refer to its cards.
+	 */
+	private void copyCatalogue() {
+		File installed = new File(DATA_PATH + CATALOGUE);
+		try {
+			int assetFingerprint;
+			InputStream in = getAssets().open(CATALOGUE);
+			try {
+				assetFingerprint = CardCatalogue.readFingerprint(readHeader(in));
+			} finally {
+				in.close();
+			}
+
+			if (installed.exists()) {
+				int installedFingerprint;
+				in = new FileInputStream(installed);
+				try {
+					installedFingerprint = CardCatalogue
+							.readFingerprint(readHeader(in));
+				} catch (IOException e) {
+					installedFingerprint = 0; // broken or old format, just replace it
+				} finally {
+					in.close();
+				}
+
+				if (installedFingerprint == assetFingerprint) {
+					return;
+				}
+				File archive = Saver.getCatalogueArchive(new File(DATA_PATH),
+						installedFingerprint);
+				if (installedFingerprint != 0
+						&& new File(DATA_PATH + Saver.JOURNAL).exists()
+						&& installed.renameTo(archive)) {
+					Log.d(LOG_TAG, "Kept the old catalogue as " + archive);
+				}
+			}
+
+			// Copy under another name first, so a half copied file is never used
+			File tmp = new File(DATA_PATH + CATALOGUE + ".tmp");
+			in = getAssets().open(CATALOGUE);
+			OutputStream out = new FileOutputStream(tmp);
+			try {
+				copyFile(in, out);
+			} finally {
+				in.close();
+				out.close();
+			}
+			if (!tmp.renameTo(installed)) {
+				tmp.delete();
+				throw new IOException("Could not replace " + installed);
+			}
+
+			Log.d(LOG_TAG, "Copied " + CATALOGUE);
+		} catch (IOException e) {
+			Log.i(LOG_TAG, "No card catalogue to copy " + e.toString());
+		}
+	}
+
+	private byte[] readHeader(InputStream in) throws IOException {
+		byte[] header = new byte[CardCatalogue.HEADER_SIZE];
+		int length = 0;
+		int read;
+		while (length < header.length
+				&& (read = in.read(header, length, header.length - length)) != -1) {
+			length += read;
+		}
+		if (length < header.length) {
+			throw new IOException("Card catalogue is truncated");
+		}
+		return header;
+	}
+
 	private void copyFile(InputStream in, OutputStream out) throws IOException {
 		byte[] buffer = new byte[1024];
 		int read;
@@ -0,0 +1,251 @@
+package hop.si.box.cardscanner;
+
+import java.util.concurrent.CancellationException;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.hardware.Camera;
+import android.hardware.Camera.PreviewCallback;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.googlecode.leptonica.android.Pix;
+import com.googlecode.leptonica.android.ReadFile;
+import com.googlecode.leptonica.android.Rotate;
+import com.googlecode.tesseract.android.TessBaseAPI;
+
+/**
+ * Continuous scan mode: instead of taking a picture on every tap the preview
+ * frames are recognized directly, at most one frame every x milliseconds.
+ *
+ * The frames are delivered into a small ring of reused NV21 buffers
+ * (Camera.setPreviewCallbackWithBuffer), so no memory is allocated per frame.
+ * Only the name bar is read from the luminance plane at the start of each
+ * buffer, straight into an 8 bit grayscale pix (ReadFile.readNV21). That skips
+ * the JPEG encoding and decoding and the bitmap conversions of the
+ * takePicture() path completely, and tesseract doesn't waste time on the
+ * rest of the card. A buffer is given
+ * back to the camera as soon as its frame is recognized or dropped.
+ *
+ * Frames are only useful while they are fresh: as soon as a newer frame
+ * arrives the recognition of the previous one is stopped, and no frame may
+ * take longer than two scan intervals.
+ *
+ * The frames are in the orientation of the camera sensor, not in the
+ * (rotated) orientation of the preview display. So the name bar the user
+ * lines up on the display is mapped to the frame through the display
+ * orientation, and the cropped bar is rotated upright before the OCR.
+ *
+ * @author Basti Hoffmeister
+ *
+ */
+public class ContinuousScanner implements PreviewCallback {
+
+	private static final String LOG_TAG = "ContinuousScanner";
+
+	/** Number of preview buffers in the ring. */
+	private static final int BUFFER_COUNT = 3;
+
+	private final RecognitionPipeline mPipeline;
+	private final long mIntervalMillis;
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+	private Camera mCamera; // null while stopped
+	private int mFrameWidth;
+	private int mFrameHeight;
+	private int mOrientation; // clockwise rotation of the preview on the display
+	private long mLastSubmit;
+	private FrameJob mLastJob; // the newest frame in the pipeline
+
+	/**
+	 * @param pipeline
+	 *            the pipeline that recognizes the frames
+	 * @param intervalMillis
+	 *            minimum time between two recognized frames
+	 */
+	public ContinuousScanner(RecognitionPipeline pipeline, long intervalMillis) {
+		mPipeline = pipeline;
+		mIntervalMillis = intervalMillis;
+	}
+
+	/**
+	 * Start feeding preview frames of the camera into the pipeline. The
+	 * preview has to be running (or started afterwards). Call on the UI
+	 * thread.
+	 *
+	 * @param orientation
+	 *            the clockwise rotation of the preview on the display (as
+	 *            given to Camera.setDisplayOrientation())
+	 */
+	public void start(Camera camera, int orientation) {
+		if (mCamera != null) {
+			return;
+		}
+
+		Camera.Parameters parameters = camera.getParameters();
+		Camera.Size size = parameters.getPreviewSize();
+		int bitsPerPixel = ImageFormat.getBitsPerPixel(parameters
+				.getPreviewFormat());
+		int bufferSize = size.width * size.height * bitsPerPixel / 8;
+
+		mCamera = camera;
+		mFrameWidth = size.width;
+		mFrameHeight = size.height;
+		mOrientation = orientation;
+		mLastSubmit = 0;
+
+		for (int i = 0; i < BUFFER_COUNT; i++) {
+			camera.addCallbackBuffer(new byte[bufferSize]);
+		}
+		camera.setPreviewCallbackWithBuffer(this);
+
+		Log.d(LOG_TAG, "Scanning " + mFrameWidth + "x" + mFrameHeight
+				+ " preview frames.");
+	}
+
+	/**
+	 * Stop scanning. The frame that is in the pipeline is cancelled (stopped
+	 * at the next word if it is already recognized), its buffer is dropped
+	 * afterwards. Call on the UI thread.
+	 */
+	public void stop() {
+		if (mCamera == null) {
+			return;
+		}
+
+		mCamera.setPreviewCallbackWithBuffer(null);
+		mCamera = null;
+
+		if (mLastJob != null) {
+			mLastJob.cancel();
+			mLastJob = null;
+		}
+	}
+
+	public boolean isRunning() {
+		return mCamera != null;
+	}
+
+	@Override
+	public void onPreviewFrame(byte[] data, Camera camera) {
+		if (camera != mCamera || data == null) {
+			return;
+		}
+
+		long now = SystemClock.elapsedRealtime();
+
+		if (now - mLastSubmit < mIntervalMillis) {
+			camera.addCallbackBuffer(data); // too early, reuse the buffer
+			return;
+		}
+
+		// A newer frame is there, don't waste time on the old one any more
+		if (mLastJob != null) {
+			mLastJob.cancel();
+		}
+
+		mLastSubmit = now;
+		mLastJob = new FrameJob(camera, data, mFrameWidth, mFrameHeight,
+				mOrientation);
+		mPipeline.submit(mLastJob);
+	}
+
+	/**
+	 * Give a buffer back to the camera, unless scanning was stopped (or the
+	 * camera changed) in the meantime.
+	 */
+	private void returnBuffer(final Camera camera, final byte[] buffer) {
+		mHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				if (camera == mCamera) {
+					camera.addCallbackBuffer(buffer);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Recognizes one preview frame.
+	 */
+	private class FrameJob extends RecognitionPipeline.Job implements
+			TessBaseAPI.ProgressListener {
+
+		private final Camera camera;
+		private final byte[] frame;
+		private final int width;
+		private final int height;
+		private final int orientation;
+		private final Rect name; // the name bar in frame coordinates
+		private long layoutDone; // time of the first progress report
+
+		FrameJob(Camera camera, byte[] frame, int width, int height,
+				int orientation) {
+			this.camera = camera;
+			this.frame = frame;
+			this.width = width;
+			this.height = height;
+			this.orientation = orientation;
+			this.name = CardField.NAME.getBounds(width, height, orientation);
+		}
+
+		@Override
+		protected RecognitionResult recognize(TessBaseAPI api) {
+			long start = SystemClock.elapsedRealtime();
+
+			// The preview size is already picked for the OCR, so no reduction
+			Pix pix = ReadFile.readNV21(frame, width, height, name, 1);
+			if (orientation != 0) {
+				// Turn the bar upright, so the text runs horizontally
+				Pix upright = Rotate.rotateOrth(pix, orientation / 90);
+				pix.recycle();
+				if (upright == null) {
+					throw new IllegalStateException("Could not rotate the frame");
+				}
+				pix = upright;
+			}
+			try {
+				api.setImage(pix);
+			} finally {
+				pix.recycle(); // tesseract has its own clone
+			}
+
+			// The first progress report comes after the layout analysis
+			layoutDone = 0;
+			api.setProgressListener(this);
+			String text;
+			try {
+				text = api.getUTF8Text((int) (2 * mIntervalMillis));
+			} finally {
+				api.setProgressListener(null);
+			}
+			if (text == null) {
+				throw new CancellationException("Frame was stopped or timed out");
+			}
+			int confidence = api.meanConfidence();
+
+			long end = SystemClock.elapsedRealtime();
+			if (layoutDone > 0) {
+				Log.d(LOG_TAG, "Layout " + (layoutDone - start)
+						+ " ms, recognition " + (end - layoutDone) + " ms");
+			}
+
+			return new RecognitionResult(text, confidence, end - start);
+		}
+
+		@Override
+		public void onProgress(int percent, int left, int top, int right,
+				int bottom) {
+			if (layoutDone == 0) {
+				layoutDone = SystemClock.elapsedRealtime();
+			}
+		}
+
+		@Override
+		protected void recycle() {
+			returnBuffer(camera, frame);
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package hop.si.box.cardscanner;
+
+import hop.si.box.cardscanner.util.PictureDecoder;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import android.graphics.Rect;
+import android.os.SystemClock;
+
+import com.googlecode.tesseract.android.TessBaseAPI;
+
+/**
+ * Recognizes a picture taken with Camera.takePicture(). Each card field is
+ * decoded (downsampled) on its own from the JPEG data on the worker thread and
+ * handed to tesseract separately. The fields only cover a small part of the
+ * card, so the rest of the picture is never decoded at all.
+ *
+ * @author Basti Hoffmeister
+ *
+ */
+public class PictureJob extends RecognitionPipeline.Job {
+
+	private static final CardField[] FIELDS = CardField.values();
+
+	private final PictureDecoder decoder;
+	private byte[] data;
+
+	/**
+	 * @param data
+	 *            the JPEG data of the picture
+	 * @param decoder
+	 *            decodes the parts of the picture that are read
+	 */
+	public PictureJob(byte[] data, PictureDecoder decoder) {
+		this.data = data;
+		this.decoder = decoder;
+	}
+
+	@Override
+	protected RecognitionResult recognize(TessBaseAPI api) throws IOException {
+		long start = SystemClock.elapsedRealtime();
+
+		String[] texts = new String[FIELDS.length];
+		int[] confidences = new int[FIELDS.length];
+		PictureDecoder.Source source = decoder.open(data);
+
+		try {
+			for (int i = 0; i < FIELDS.length; i++) {
+				Rect bounds = FIELDS[i].getBounds(source.getWidth(),
+						source.getHeight());
+				PictureDecoder.Picture picture = source.decode(bounds);
+
+				try {
+					api.setImage(picture.getBitmap());
+				} finally {
+					decoder.release(picture); // tesseract has its own copy now
+				}
+
+				// Monitored, so cancel() stops the job
+				texts[i] = api.getUTF8Text(0);
+				if (texts[i] == null) {
+					throw new CancellationException("Picture was stopped");
+				}
+				confidences[i] = api.meanConfidence();
+			}
+		} finally {
+			source.close();
+		}
+
+		Map<CardField, String> fields = new EnumMap<CardField, String>(
+				CardField.class);
+		for (int i = 0; i < FIELDS.length; i++) {
+			fields.put(FIELDS[i], texts[i]);
+		}
+
+		int name = CardField.NAME.ordinal();
+		return new RecognitionResult(texts[name], confidences[name],
+				SystemClock.elapsedRealtime() - start, fields);
+	}
+
+	@Override
+	protected void recycle() {
+		data = null;
+	}
+}
@@ -17,6 +17,10 @@ import android.view.SurfaceView;
  *
  */
 public class Preview extends SurfaceView implements SurfaceHolder.Callback, AutoFocusCallback{
+
+	/** Clockwise rotation of the preview on the display (portrait). */
+	public static final int DISPLAY_ORIENTATION = 90;
+
 	
 	private SurfaceHolder mHolder;
 	private Camera mCamera;
@@ -64,7 +68,7 @@ public class Preview extends SurfaceView implements SurfaceHolder.Callback, Auto
 
         // set preview size and make any resize, rotate or
         // reformatting changes here
-        mCamera.setDisplayOrientation(90);
+        mCamera.setDisplayOrientation(DISPLAY_ORIENTATION);
 
         try {
             mCamera.setPreviewDisplay(mHolder);
@@ -0,0 +1,302 @@
+package hop.si.box.cardscanner;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.googlecode.tesseract.android.TessBaseAPI;
+import com.googlecode.tesseract.android.TessEnginePool;
+
+/**
+ * Runs the OCR in the background so the preview keeps running while a card is
+ * recognized. Jobs are put into a bounded queue and handled by a fixed number
+ * of worker threads, each borrowing an engine from the engine pool. The results
+ * are posted back to the listener on the UI thread.
+ *
+ * If the user takes pictures faster than they can be recognized the queue
+ * fills up. Depending on the overflow policy either the oldest waiting job is
+ * dropped in favour of the new one or the new one is rejected.
+ *
+ * @author Basti Hoffmeister
+ *
+ */
+public class RecognitionPipeline {
+
+	private static final String LOG_TAG = "RecognitionPipeline";
+
+	/**
+	 * What to do with a new job when the queue is full.
+	 */
+	public enum OverflowPolicy {
+		/** Drop the oldest waiting job and queue the new one. */
+		DROP_OLDEST,
+		/** Keep the waiting jobs and reject the new one. */
+		REJECT
+	}
+
+	/**
+	 * A single piece of work for the pipeline, e.g. one picture. Runs on a
+	 * worker thread.
+	 */
+	public static abstract class Job {
+
+		private TessBaseAPI api; // guarded by this, set while running
+		private boolean cancelled; // guarded by this
+
+		/**
+		 * Do the recognition with the given (initialized) engine. The engine is
+		 * cleared and given back to the pool afterwards. Use
+		 * TessBaseAPI.getUTF8Text(int) so the job can be cancelled while it
+		 * runs.
+		 */
+		protected abstract RecognitionResult recognize(TessBaseAPI api)
+				throws Exception;
+
+		/**
+		 * Cancel the job. A waiting job is not started any more, a running
+		 * job is stopped at the next word. The listener gets a
+		 * CancellationException. Can be called on any thread.
+		 */
+		public synchronized void cancel() {
+			cancelled = true;
+			if (api != null) {
+				api.stop();
+			}
+		}
+
+		public synchronized boolean isCancelled() {
+			return cancelled;
+		}
+
+		/**
+		 * Called by the worker before and after recognize(), so cancel() can
+		 * never stop an engine that has already been given back to the pool.
+		 */
+		private synchronized void setEngine(TessBaseAPI api) {
+			this.api = api;
+			if (cancelled && api != null) {
+				api.stop();
+			}
+		}
+
+		/**
+		 * Called exactly once when the job is finished, failed or was dropped.
+		 * Free the resources held by the job here. Can be called on any
+		 * thread.
+		 */
+		protected void recycle() {
+		}
+	}
+
+	/**
+	 * Gets the results of the pipeline. All methods are called on the UI
+	 * thread.
+	 */
+	public interface Listener {
+		void onRecognized(Job job, RecognitionResult result);
+
+		void onFailed(Job job, Exception e);
+	}
+
+	private final TessEnginePool mEngines;
+	private final TessEnginePool.Config mEngineConfig;
+	private final int mCapacity;
+	private final OverflowPolicy mPolicy;
+	private final Listener mListener;
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+	private final LinkedList<Job> mQueue = new LinkedList<Job>(); // guarded by this
+	private final List<Thread> mWorkers = new ArrayList<Thread>();
+	private boolean mShutdown; // guarded by this
+
+	/**
+	 * Create and start a pipeline.
+	 *
+	 * @param engines
+	 *            the pool to borrow the engines from. Should keep at least
+	 *            workers engines.
+	 * @param engineConfig
+	 *            the configuration of the engines
+	 * @param workers
+	 *            number of worker threads (= jobs recognized in parallel)
+	 * @param capacity
+	 *            maximum number of jobs waiting in the queue
+	 * @param policy
+	 *            what to do with new jobs if the queue is full
+	 * @param listener
+	 *            gets the results on the UI thread
+	 */
+	public RecognitionPipeline(TessEnginePool engines,
+			TessEnginePool.Config engineConfig, int workers, int capacity,
+			OverflowPolicy policy, Listener listener) {
+		if (workers < 1 || capacity < 1) {
+			throw new IllegalArgumentException(
+					"Need at least one worker and one queue slot");
+		}
+
+		mEngines = engines;
+		mEngineConfig = engineConfig;
+		mCapacity = capacity;
+		mPolicy = policy;
+		mListener = listener;
+
+		for (int i = 0; i < workers; i++) {
+			Thread worker = new Thread(new Worker(), "OcrWorker-" + i);
+			mWorkers.add(worker);
+			worker.start();
+		}
+	}
+
+	/**
+	 * Put a job into the queue. Never blocks.
+	 *
+	 * @return false if the job was rejected because the queue is full or the
+	 *         pipeline has been shut down. The job is recycled in that case.
+	 */
+	public boolean submit(Job job) {
+		Job dropped = null;
+		boolean accepted = true;
+
+		synchronized (this) {
+			if (mShutdown) {
+				accepted = false;
+			} else if (mQueue.size() >= mCapacity) {
+				if (mPolicy == OverflowPolicy.DROP_OLDEST) {
+					dropped = mQueue.removeFirst();
+				} else {
+					accepted = false;
+				}
+			}
+
+			if (accepted) {
+				mQueue.addLast(job);
+				notify();
+			}
+		}
+
+		if (dropped != null) {
+			Log.d(LOG_TAG, "Queue full, dropped the oldest job.");
+			dropped.recycle();
+		}
+		if (!accepted) {
+			Log.d(LOG_TAG, "Queue full, rejected the new job.");
+			job.recycle();
+		}
+
+		return accepted;
+	}
+
+	/**
+	 * Number of jobs waiting in the queue (not counting the running ones).
+	 */
+	public synchronized int getPendingCount() {
+		return mQueue.size();
+	}
+
+	/**
+	 * Stop the workers and drop all waiting jobs. Jobs that are already
+	 * running are finished but their results are not delivered any more.
+	 */
+	public void shutdown() {
+		List<Job> pending;
+
+		synchronized (this) {
+			mShutdown = true;
+			pending = new ArrayList<Job>(mQueue);
+			mQueue.clear();
+			notifyAll();
+		}
+
+		for (Job job : pending) {
+			job.recycle();
+		}
+
+		mHandler.removeCallbacksAndMessages(null);
+	}
+
+	private synchronized Job take() throws InterruptedException {
+		while (mQueue.isEmpty() && !mShutdown) {
+			wait();
+		}
+
+		return mShutdown ? null : mQueue.removeFirst();
+	}
+
+	private synchronized boolean isShutdown() {
+		return mShutdown;
+	}
+
+	private void deliver(final Job job, final RecognitionResult result,
+			final Exception error) {
+		mHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				if (isShutdown()) {
+					return;
+				}
+
+				if (error != null) {
+					mListener.onFailed(job, error);
+				} else {
+					mListener.onRecognized(job, result);
+				}
+			}
+		});
+	}
+
+	private class Worker implements Runnable {
+		@Override
+		public void run() {
+			Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+			while (true) {
+				Job job;
+				try {
+					job = take();
+				} catch (InterruptedException e) {
+					return;
+				}
+				if (job == null) {
+					return;
+				}
+
+				RecognitionResult result = null;
+				Exception error = null;
+				TessBaseAPI api = null;
+
+				try {
+					if (job.isCancelled()) {
+						throw new CancellationException("Cancelled before start");
+					}
+
+					api = mEngines.acquire(mEngineConfig);
+					job.setEngine(api);
+					result = job.recognize(api);
+
+					if (job.isCancelled()) {
+						throw new CancellationException("Cancelled");
+					}
+				} catch (CancellationException e) {
+					error = e;
+				} catch (Exception e) {
+					Log.e(LOG_TAG, "Recognition failed " + e.getLocalizedMessage());
+					error = e;
+				} finally {
+					if (api != null) {
+						job.setEngine(null);
+						mEngines.release(api);
+					}
+					job.recycle();
+				}
+
+				deliver(job, result, error);
+			}
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package hop.si.box.cardscanner;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The outcome of one recognition job: the text and how sure tesseract is
+ * about it.
+ *
+ * @author Basti Hoffmeister
+ *
+ */
+public class RecognitionResult {
+
+	private final String text;
+	private final int meanConfidence;
+	private final long elapsedMillis;
+	private final Map<CardField, String> fields;
+
+	public RecognitionResult(String text, int meanConfidence, long elapsedMillis) {
+		this(text, meanConfidence, elapsedMillis, null);
+	}
+
+	/**
+	 * @param fields
+	 *            the text of the single card fields, if they were read
+	 *            separately (may be null)
+	 */
+	public RecognitionResult(String text, int meanConfidence,
+			long elapsedMillis, Map<CardField, String> fields) {
+		this.text = text;
+		this.meanConfidence = meanConfidence;
+		this.elapsedMillis = elapsedMillis;
+
+		if (fields == null || fields.isEmpty()) {
+			this.fields = Collections.emptyMap();
+		} else {
+			this.fields = Collections
+					.unmodifiableMap(new EnumMap<CardField, String>(fields));
+		}
+	}
+
+	/** The recognized text. */
+	public String getText() {
+		return text;
+	}
+
+	/** Mean confidence of the text (0 - 100). */
+	public int getMeanConfidence() {
+		return meanConfidence;
+	}
+
+	/** Time the job took on the worker thread. */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/** The text of a single card field or null if it wasn't read. */
+	public String getField(CardField field) {
+		return fields.get(field);
+	}
+
+	@Override
+	public String toString() {
+		return text + " (" + meanConfidence + "%, " + elapsedMillis + " ms)"
+				+ (fields.isEmpty() ? "" : " " + fields);
+	}
+}
@@ -0,0 +1,85 @@
+package hop.si.box.cardscanner.match;
+
+/**
+ * Levenshtein distance (insertions, deletions and substitutions of single
+ * characters) with an upper bound. Only the band of the DP matrix that can
+ * still stay within the bound is computed, and the computation stops as soon
+ * as a whole row is over the bound. So comparing a text against a name that
+ * is far off costs almost nothing.
+ *
+ * @author Basti Hoffmeister
+ *
+ */
+public class EditDistance {
+
+	private int[] previous = new int[0];
+	private int[] current = new int[0];
+
+	/**
+	 * The distance between two strings, or max + 1 if it is larger than max.
+	 * Not thread-safe, the rows of the matrix are reused between calls.
+	 */
+	public int compute(CharSequence a, CharSequence b, int max) {
+		int n = a.length();
+		int m = b.length();
+
+		if (Math.abs(n - m) > max) {
+			return max + 1;
+		}
+		if (n == 0 || m == 0) {
+			return Math.max(n, m);
+		}
+
+		if (previous.length < m + 1) {
+			previous = new int[m + 1];
+			current = new int[m + 1];
+		}
+
+		int[] prev = previous;
+		int[] cur = current;
+		int big = max + 1;
+
+		for (int j = 0; j <= m; j++) {
+			prev[j] = j <= max ? j : big;
+		}
+
+		for (int i = 1; i <= n; i++) {
+			// Only cells with |i - j| <= max can be within the bound
+			int from = Math.max(1, i - max);
+			int to = Math.min(m, i + max);
+			char c = a.charAt(i - 1);
+			int rowMin = big;
+
+			cur[0] = i <= max ? i : big;
+			if (from > 1) {
+				cur[from - 1] = big;
+			}
+
+			for (int j = from; j <= to; j++) {
+				int cost = c == b.charAt(j - 1) ? 0 : 1;
+				int d = Math.min(Math.min(prev[j] + 1, cur[j - 1] + 1),
+						prev[j - 1] + cost);
+				if (d > big) {
+					d = big;
+				}
+				cur[j] = d;
+				if (d < rowMin) {
+					rowMin = d;
+				}
+			}
+			if (to < m) {
+				cur[to + 1] = big;
+			}
+
+			if (rowMin > max && cur[0] > max) {
+				return big; // every path is over the bound already
+			}
+
+			int[] swap = prev;
+			prev = cur;
+			cur = swap;
+		}
+
+		return Math.min(prev[m], big);
+	}
+}
@@ -0,0 +1,43 @@
+package hop.si.box.cardscanner.match;
+
+/**
+ * A known name that matches a recognized text.
+ *
+ * @author Basti Hoffmeister
+ *
+ */
+public class Match {
+
+	private final int id;
+	private final String name;
+	private final int distance;
+
+	public Match(int id, String name, int distance) {
+		this.id = id;
+		this.name = name;
+		this.distance = distance;
+	}
+
+	/** Index of the name in the list the NameIndex was built from. */
+	public int getId() {
+		return id;
+	}
+
+	/** The name as it was given to the index (not normalized). */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Edit distance between the normalized text and the normalized name, 0
+	 * for an exact match.
+	 */
+	public int getDistance() {
+		return distance;
+	}
+
+	@Override
+	public String toString() {
+		return name + " (" + distance + ")";
+	}
+}
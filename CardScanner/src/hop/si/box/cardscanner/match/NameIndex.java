@@ -0,0 +1,291 @@
+package hop.si.box.cardscanner.match;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Finds the known names closest to a recognized text, so OCR output with a few
+ * wrong characters can be snapped to the right card.
+ *
+ * The names are indexed by their trigrams (every three consecutive characters
+ * of the normalized name, padded with a space at both ends). A lookup counts
+ * the trigrams each name shares with the text, and only the names that can
+ * still be within the maximum distance are compared by their edit distance:
+ * one wrong character changes at most 3 trigrams, so a name at distance k
+ * shares at least (trigrams of the text - 3k) of them. Names sharing the most
+ * are compared first. For texts so short that the bound admits every name,
+ * all names are compared (mostly skipped by their length). The index is
+ * stored in a few flat arrays:
+ * -> keys: the distinct trigrams, sorted, so they can be binary searched
+ * -> offsets: where the ids of the names with keys[i] start in postings
+ * -> postings: the name ids of all trigrams, one after another
+ * That takes a few MB for tens of thousands of names instead of a map of
+ * lists with an object per entry.
+ *
+ * Lookups reuse their buffers and are synchronized.
+ *
+ * @author Basti Hoffmeister
+ *
+ */
+public class NameIndex {
+
+	/** Trigrams one wrong character can change. */
+	private static final int GRAMS_PER_EDIT = 3;
+
+	private final String[] names;
+	private final String[] normalized;
+	private final long[] keys;
+	private final int[] offsets;
+	private final int[] postings;
+
+	// Lookup buffers, guarded by this
+	private final int[] shared; // trigrams shared with the text, per name
+	private final int[] touched; // names with shared[id] > 0
+	private final int[] ranked; // touched, most shared trigrams first
+	private final EditDistance distance = new EditDistance();
+
+	/**
+	 * Build the index. Takes a while for large lists, don't call it on the UI
+	 * thread.
+	 *
+	 * @param names
+	 *            the known names, their index in the list is the id of the
+	 *            matches
+	 */
+	public NameIndex(List<String> names) {
+		int n = names.size();
+		this.names = names.toArray(new String[n]);
+		this.normalized = new String[n];
+
+		// Collect the trigrams of all names
+		long[][] grams = new long[n][];
+		int total = 0;
+		for (int id = 0; id < n; id++) {
+			normalized[id] = normalize(this.names[id]);
+			grams[id] = trigrams(normalized[id]);
+			total += grams[id].length;
+		}
+
+		// The distinct trigrams, sorted
+		long[] all = new long[total];
+		int pos = 0;
+		for (int id = 0; id < n; id++) {
+			System.arraycopy(grams[id], 0, all, pos, grams[id].length);
+			pos += grams[id].length;
+		}
+		Arrays.sort(all);
+		int distinct = 0;
+		for (int i = 0; i < total; i++) {
+			if (i == 0 || all[i] != all[i - 1]) {
+				all[distinct++] = all[i];
+			}
+		}
+		keys = Arrays.copyOf(all, distinct);
+
+		// Lay out the name lists in the order of the trigrams
+		offsets = new int[distinct + 1];
+		for (int id = 0; id < n; id++) {
+			for (long key : grams[id]) {
+				offsets[Arrays.binarySearch(keys, key) + 1]++;
+			}
+		}
+		for (int i = 0; i < distinct; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+
+		// Fill in the ids, ascending within each trigram
+		postings = new int[total];
+		int[] fill = Arrays.copyOf(offsets, distinct);
+		for (int id = 0; id < n; id++) {
+			for (long key : grams[id]) {
+				postings[fill[Arrays.binarySearch(keys, key)]++] = id;
+			}
+		}
+
+		shared = new int[n];
+		touched = new int[n];
+		ranked = new int[n];
+	}
+
+	/** Number of names in the index. */
+	public int size() {
+		return names.length;
+	}
+
+	/** The name with the given id. */
+	public String getName(int id) {
+		return names[id];
+	}
+
+	/**
+	 * The closest name to the text, or null if no name is within the maximum
+	 * distance. The maximum distance grows with the length of the text: about
+	 * one wrong character in four is tolerated.
+	 */
+	public Match findBest(String text) {
+		int length = normalize(text).length();
+		List<Match> matches = find(text, Math.max(1, length / 4), 1);
+
+		return matches.isEmpty() ? null : matches.get(0);
+	}
+
+	/**
+	 * The names closest to the text, best first.
+	 *
+	 * @param text
+	 *            the recognized text
+	 * @param maxDistance
+	 *            the largest edit distance to accept
+	 * @param limit
+	 *            the maximum number of matches to return
+	 */
+	public synchronized List<Match> find(String text, int maxDistance,
+			int limit) {
+		String query = normalize(text);
+		if (query.length() == 0 || limit < 1) {
+			return Collections.emptyList();
+		}
+
+		// Count the trigrams every name shares with the text
+		long[] grams = trigrams(query);
+		int touchedCount = 0;
+		for (long key : grams) {
+			int k = Arrays.binarySearch(keys, key);
+			if (k < 0) {
+				continue;
+			}
+			for (int p = offsets[k]; p < offsets[k + 1]; p++) {
+				int id = postings[p];
+				if (shared[id]++ == 0) {
+					touched[touchedCount++] = id;
+				}
+			}
+		}
+
+		// Rank the names by shared trigrams (counting sort, the counts are
+		// at most the number of trigrams of the text)
+		int[] start = new int[grams.length + 2];
+		for (int i = 0; i < touchedCount; i++) {
+			start[grams.length - shared[touched[i]] + 1]++;
+		}
+		for (int s = 1; s < start.length; s++) {
+			start[s] += start[s - 1];
+		}
+		for (int i = 0; i < touchedCount; i++) {
+			int id = touched[i];
+			ranked[start[grams.length - shared[id]]++] = id;
+		}
+
+		List<Match> matches = new ArrayList<Match>();
+		int bound = maxDistance;
+
+		if (grams.length - GRAMS_PER_EDIT * maxDistance <= 0) {
+			// Even names sharing no trigram can be close enough
+			for (int id = 0; id < names.length; id++) {
+				bound = offer(query, id, bound, matches, limit);
+			}
+		} else {
+			// Ranked by shared trigrams, so the first name below the bound
+			// ends the candidates
+			for (int i = 0; i < touchedCount; i++) {
+				int id = ranked[i];
+				if (shared[id] < grams.length - GRAMS_PER_EDIT * bound) {
+					break;
+				}
+				bound = offer(query, id, bound, matches, limit);
+			}
+		}
+
+		for (int i = 0; i < touchedCount; i++) {
+			shared[touched[i]] = 0;
+		}
+
+		sortByDistance(matches);
+		return matches;
+	}
+
+	/**
+	 * Compare a name with the query and keep it if it is among the closest
+	 * limit names so far.
+	 *
+	 * @return the bound for the next names: only names at least as close as
+	 *         the worst kept one matter once limit names are kept
+	 */
+	private int offer(String query, int id, int bound, List<Match> matches,
+			int limit) {
+		int d = distance.compute(query, normalized[id], bound);
+
+		if (d <= bound) {
+			matches.add(new Match(id, names[id], d));
+			if (matches.size() > limit) {
+				sortByDistance(matches);
+				matches.remove(limit);
+				bound = matches.get(limit - 1).getDistance();
+			}
+		}
+		return bound;
+	}
+
+	/**
+	 * Lower case, letters and digits only, single spaces between words. Both
+	 * the names and the recognized texts are compared in this form, so case
+	 * and punctuation errors of the OCR don't count.
+	 */
+	public static String normalize(String text) {
+		StringBuilder result = new StringBuilder(text.length());
+		boolean space = false;
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+
+			if (Character.isLetterOrDigit(c)) {
+				if (space && result.length() > 0) {
+					result.append(' ');
+				}
+				result.append(c);
+				space = false;
+			} else {
+				space = true;
+			}
+		}
+
+		return result.toString().toLowerCase(Locale.GERMAN);
+	}
+
+	/** The distinct trigrams of a normalized text. */
+	private static long[] trigrams(String text) {
+		String padded = " " + text + " ";
+		int count = Math.max(0, padded.length() - 2);
+		long[] grams = new long[count];
+
+		for (int i = 0; i < count; i++) {
+			grams[i] = ((long) padded.charAt(i) << 32)
+					| ((long) padded.charAt(i + 1) << 16)
+					| padded.charAt(i + 2);
+		}
+
+		// Drop duplicates, a name counts once per trigram
+		Arrays.sort(grams);
+		int distinct = 0;
+		for (int i = 0; i < count; i++) {
+			if (i == 0 || grams[i] != grams[i - 1]) {
+				grams[distinct++] = grams[i];
+			}
+		}
+
+		return distinct == count ? grams : Arrays.copyOf(grams, distinct);
+	}
+
+	private static void sortByDistance(List<Match> matches) {
+		Collections.sort(matches, new Comparator<Match>() {
+			@Override
+			public int compare(Match a, Match b) {
+				return a.getDistance() - b.getDistance();
+			}
+		});
+	}
+}
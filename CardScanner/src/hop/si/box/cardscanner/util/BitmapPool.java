@@ -0,0 +1,99 @@
+package hop.si.box.cardscanner.util;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import android.graphics.Bitmap;
+
+/**
+ * Keeps a few bitmaps that are not needed any more, so their memory can be
+ * reused as BitmapFactory.Options.inBitmap for the next decode instead of
+ * allocating (and later collecting) a new multi megabyte bitmap for every
+ * picture. Since the camera resolution doesn't change between shots, the
+ * bitmaps usually have exactly the size that is needed.
+ *
+ * All methods are thread-safe.
+ *
+ * @author Basti Hoffmeister
+ *
+ */
+public class BitmapPool {
+
+	private final int maxSize;
+	private final LinkedList<Bitmap> bitmaps = new LinkedList<Bitmap>(); // most recent first
+
+	/**
+	 * @param maxSize
+	 *            maximum number of bitmaps kept in the pool
+	 */
+	public BitmapPool(int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException(
+					"Pool must keep at least one bitmap");
+		}
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Take a bitmap with exactly the given size and config out of the pool.
+	 *
+	 * @return the bitmap or null if there is none
+	 */
+	public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+		for (Iterator<Bitmap> it = bitmaps.iterator(); it.hasNext();) {
+			Bitmap bitmap = it.next();
+
+			if (bitmap.getWidth() == width && bitmap.getHeight() == height
+					&& bitmap.getConfig() == config) {
+				it.remove();
+				return bitmap;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Give a bitmap to the pool. It must not be used by the caller afterwards.
+	 * Immutable bitmaps can't be reused and are recycled right away, as is
+	 * the oldest bitmap if the pool is full.
+	 */
+	public void put(Bitmap bitmap) {
+		if (bitmap == null || bitmap.isRecycled()) {
+			return;
+		}
+		if (!bitmap.isMutable()) {
+			bitmap.recycle();
+			return;
+		}
+
+		Bitmap evicted = null;
+
+		synchronized (this) {
+			bitmaps.addFirst(bitmap);
+			if (bitmaps.size() > maxSize) {
+				evicted = bitmaps.removeLast();
+			}
+		}
+
+		if (evicted != null) {
+			evicted.recycle();
+		}
+	}
+
+	/**
+	 * Recycle all bitmaps in the pool.
+	 */
+	public void clear() {
+		LinkedList<Bitmap> old;
+
+		synchronized (this) {
+			old = new LinkedList<Bitmap>(bitmaps);
+			bitmaps.clear();
+		}
+
+		for (Bitmap bitmap : old) {
+			bitmap.recycle();
+		}
+	}
+}
@@ -0,0 +1,299 @@
+package hop.si.box.cardscanner.util;
+
+import hop.si.box.cardscanner.CardCatalogue;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import android.util.Log;
+import android.util.SparseIntArray;
+
+/**
+ * The scanned collection: how many copies there are of each card, of each set
+ * and of each language. The counts are updated with every scan instead of
+ * being counted again from the list of scans.
+ *
+ * The counts can be written to a snapshot file together with the journal
+ * offset they cover, so opening a collection only needs the snapshot and the
+ * scans after it, no matter how many cards were scanned before.
+ *
+ * Snapshot format (big endian): magic "HCOL", version, journal offset
+ * (long), fingerprint of the catalogue, total count, then the card, set and language
+ * counts (each: number of entries, then key and count pairs) and a CRC32 of
+ * everything before it.
+ *
+ * All methods are thread-safe.
+ *
+ * @author Basti Hoffmeister
+ *
+ */
+public class CardCollection implements ScanJournal.Visitor {
+
+	private static final String LOG_TAG = "CardCollection";
+
+	public static final int MAGIC = 0x48434F4C; // "HCOL"
+	public static final int VERSION = 2;
+
+	private static final int MAX_LANGUAGES = 1024; // sanity check for snapshots
+
+	private final CardCatalogue catalogue;
+	private final SparseIntArray cards; // card id -> count
+	private final SparseIntArray sets; // set index in the catalogue -> count
+	private final SparseIntArray languages; // packed language -> count
+	private int total;
+	private long position = ScanJournal.HEADER_SIZE; // journal offset after the last scan
+
+	/**
+	 * An empty collection.
+	 *
+	 * @param catalogue
+	 *            the catalogue the card ids refer to
+	 */
+	public CardCollection(CardCatalogue catalogue) {
+		this(catalogue, new SparseIntArray(), new SparseIntArray(),
+				new SparseIntArray());
+	}
+
+	private CardCollection(CardCatalogue catalogue, SparseIntArray cards,
+			SparseIntArray sets, SparseIntArray languages) {
+		this.catalogue = catalogue;
+		this.cards = cards;
+		this.sets = sets;
+		this.languages = languages;
+	}
+
+	/**
+	 * Count a scan from the journal. Scans of card ids that are not in the
+	 * catalogue are skipped.
+	 */
+	@Override
+	public synchronized void onScan(long offset, long time, int cardId,
+			int delta, int language) {
+		position = offset + ScanJournal.RECORD_SIZE;
+
+		if (cardId < 0 || cardId >= catalogue.size()) {
+			Log.w(LOG_TAG, "Skipping scan of unknown card " + cardId);
+			return;
+		}
+
+		add(cards, cardId, delta);
+		add(sets, catalogue.getSet(cardId), delta);
+		add(languages, language, delta);
+		total += delta;
+	}
+
+	private static void add(SparseIntArray counts, int key, int delta) {
+		int count = counts.get(key) + delta;
+		if (count == 0) {
+			counts.delete(key);
+		} else {
+			counts.put(key, count);
+		}
+	}
+
+	/** Number of copies of a card. */
+	public synchronized int getCount(int cardId) {
+		return cards.get(cardId);
+	}
+
+	/** Number of cards of a set (index in the catalogue). */
+	public synchronized int getSetCount(int set) {
+		return sets.get(set);
+	}
+
+	/** Number of cards in a language, e.g. "deu". */
+	public synchronized int getLanguageCount(String language) {
+		return languages.get(ScanJournal.packLanguage(language));
+	}
+
+	/** Number of all cards. */
+	public synchronized int getTotal() {
+		return total;
+	}
+
+	/** Number of different cards. */
+	public synchronized int getDistinctCount() {
+		return cards.size();
+	}
+
+	/**
+	 * Copy the counts of the cards with an id of at least fromCardId, in order
+	 * of their ids, as many as fit into the arrays. Lets the collection be read
+	 * in chunks (the next chunk starts after the last id) without holding the
+	 * lock for long or copying all of it.
+	 *
+	 * @return the number of cards copied, 0 if there are no more
+	 */
+	public synchronized int getCounts(int fromCardId, int[] cardIds,
+			int[] counts) {
+		// First index with a key >= fromCardId, keys are sorted
+		int low = 0;
+		int high = cards.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (cards.keyAt(mid) < fromCardId) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		int n = Math.min(Math.min(cardIds.length, counts.length), cards.size()
+				- low);
+		for (int i = 0; i < n; i++) {
+			cardIds[i] = cards.keyAt(low + i);
+			counts[i] = cards.valueAt(low + i);
+		}
+		return n;
+	}
+
+	/**
+	 * The journal offset after the last counted scan. Scans from there on are
+	 * not counted yet.
+	 */
+	public synchronized long getPosition() {
+		return position;
+	}
+
+	/**
+	 * A copy to write a snapshot from while scanning goes on.
+	 */
+	public synchronized CardCollection copy() {
+		CardCollection copy = new CardCollection(catalogue, copy(cards),
+				copy(sets), copy(languages));
+		copy.total = total;
+		copy.position = position;
+		return copy;
+	}
+
+	private static SparseIntArray copy(SparseIntArray counts) {
+		SparseIntArray copy = new SparseIntArray(counts.size());
+		for (int i = 0; i < counts.size(); i++) {
+			copy.append(counts.keyAt(i), counts.valueAt(i)); // keys are sorted
+		}
+		return copy;
+	}
+
+	/**
+	 * Write the counts to a snapshot file. The file is replaced atomically, so
+	 * there is always a complete snapshot even if the app dies meanwhile. The
+	 * scans up to getPosition() must be synced to the journal before, or the
+	 * snapshot could cover scans that get lost.
+	 */
+	public synchronized void writeSnapshot(File file) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		FileOutputStream stream = new FileOutputStream(tmp);
+		try {
+			CheckedOutputStream checked = new CheckedOutputStream(
+					new BufferedOutputStream(stream), new CRC32());
+			DataOutputStream out = new DataOutputStream(checked);
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(position);
+			out.writeInt(catalogue.getFingerprint());
+			out.writeInt(total);
+			write(out, cards);
+			write(out, sets);
+			write(out, languages);
+			out.flush();
+			out.writeInt((int) checked.getChecksum().getValue());
+			out.flush();
+			stream.getFD().sync();
+		} finally {
+			stream.close();
+		}
+
+		if (!tmp.renameTo(file)) {
+			tmp.delete();
+			throw new IOException("Could not replace " + file);
+		}
+	}
+
+	private static void write(DataOutputStream out, SparseIntArray counts)
+			throws IOException {
+		out.writeInt(counts.size());
+		for (int i = 0; i < counts.size(); i++) {
+			out.writeInt(counts.keyAt(i));
+			out.writeInt(counts.valueAt(i));
+		}
+	}
+
+	/**
+	 * Read a snapshot written by writeSnapshot().
+	 *
+	 * @return the collection or null if there is no usable snapshot (missing,
+	 *         corrupt or written with another catalogue)
+	 */
+	public static CardCollection readSnapshot(File file,
+			CardCatalogue catalogue) {
+		if (!file.exists()) {
+			return null;
+		}
+
+		try {
+			CheckedInputStream checked = new CheckedInputStream(
+					new BufferedInputStream(new FileInputStream(file)),
+					new CRC32());
+			DataInputStream in = new DataInputStream(checked);
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					Log.w(LOG_TAG, "Not a collection snapshot: " + file);
+					return null;
+				}
+				long position = in.readLong();
+				if (in.readInt() != catalogue.getFingerprint()) {
+					Log.i(LOG_TAG, "Snapshot is from another catalogue");
+					return null;
+				}
+				int total = in.readInt();
+				SparseIntArray cards = read(in, catalogue.size());
+				SparseIntArray sets = read(in, catalogue.getSetCount());
+				SparseIntArray languages = read(in, MAX_LANGUAGES);
+
+				int crc = (int) checked.getChecksum().getValue();
+				if (in.readInt() != crc) {
+					Log.w(LOG_TAG, "Corrupt collection snapshot: " + file);
+					return null;
+				}
+
+				CardCollection collection = new CardCollection(catalogue,
+						cards, sets, languages);
+				collection.total = total;
+				collection.position = position;
+				return collection;
+			} finally {
+				in.close();
+			}
+		} catch (EOFException e) {
+			Log.w(LOG_TAG, "Truncated collection snapshot: " + file);
+		} catch (IOException e) {
+			Log.w(LOG_TAG, "Could not read collection snapshot "
+					+ e.getLocalizedMessage());
+		}
+		return null;
+	}
+
+	private static SparseIntArray read(DataInputStream in, int maxSize)
+			throws IOException {
+		int size = in.readInt();
+		if (size < 0 || size > maxSize) {
+			throw new IOException("Bad number of counts " + size);
+		}
+		SparseIntArray counts = new SparseIntArray(size);
+		for (int i = 0; i < size; i++) {
+			int key = in.readInt();
+			counts.append(key, in.readInt()); // written sorted
+		}
+		return counts;
+	}
+}
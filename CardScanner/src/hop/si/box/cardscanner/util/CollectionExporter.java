@@ -0,0 +1,280 @@
+package hop.si.box.cardscanner.util;
+
+import hop.si.box.cardscanner.CardCatalogue;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.zip.GZIPOutputStream;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * Writes the scanned collection as a list for the user, one row per card
+ * with its name, set code, collector number and number of copies.
+ *
+ * The rows are streamed: the counts are read from the collection in small
+ * chunks and every row is written as soon as it is formatted, so the memory
+ * needed is the same for ten cards and for fifty thousand. Scanning can go on
+ * while exporting.
+ *
+ * @author Basti Hoffmeister
+ *
+ */
+public class CollectionExporter {
+
+	private static final String LOG_TAG = "CollectionExporter";
+
+	private static final int CHUNK_SIZE = 256; // cards read from the collection at once
+	private static final int BUFFER_SIZE = 8192;
+
+	public enum Format {
+		/** Comma separated with a header line, quoted as in RFC 4180. */
+		CSV(".csv"),
+		/** One JSON object per line. */
+		JSON_LINES(".jsonl");
+
+		private final String extension;
+
+		private Format(String extension) {
+			this.extension = extension;
+		}
+
+		/** File extension, e.g. ".csv" (without ".gz"). */
+		public String getExtension() {
+			return extension;
+		}
+	}
+
+	/**
+	 * Gets the result of exportInBackground(), on the UI thread.
+	 */
+	public interface Listener {
+		void onExported(File file, int rows);
+
+		void onFailed(File file, IOException e);
+	}
+
+	private final CardCatalogue catalogue;
+	private final CardCollection collection;
+	private final Handler handler = new Handler(Looper.getMainLooper());
+
+	public CollectionExporter(CardCatalogue catalogue,
+			CardCollection collection) {
+		this.catalogue = catalogue;
+		this.collection = collection;
+	}
+
+	/**
+	 * Write the collection to a stream. The stream is not closed.
+	 *
+	 * @param gzip
+	 *            compress the rows with gzip
+	 * @return the number of rows (cards) written
+	 */
+	public int export(OutputStream out, Format format, boolean gzip)
+			throws IOException {
+		GZIPOutputStream compressed = gzip ? new GZIPOutputStream(out,
+				BUFFER_SIZE) : null;
+		Writer writer = new BufferedWriter(new OutputStreamWriter(
+				gzip ? compressed : out, "UTF-8"), BUFFER_SIZE);
+
+		if (format == Format.CSV) {
+			writer.write("name,set,number,count\n");
+		}
+
+		int[] cardIds = new int[CHUNK_SIZE];
+		int[] counts = new int[CHUNK_SIZE];
+		int rows = 0;
+		int next = 0;
+		int n;
+
+		while ((n = collection.getCounts(next, cardIds, counts)) > 0) {
+			for (int i = 0; i < n; i++) {
+				if (counts[i] <= 0) {
+					continue; // removed more often than added
+				}
+				int card = cardIds[i];
+				if (format == Format.CSV) {
+					writeCsvRow(writer, card, counts[i]);
+				} else {
+					writeJsonRow(writer, card, counts[i]);
+				}
+				rows++;
+			}
+			next = cardIds[n - 1] + 1;
+		}
+
+		writer.flush();
+		if (compressed != null) {
+			compressed.finish();
+		}
+		out.flush();
+		return rows;
+	}
+
+	/**
+	 * Write the collection to a channel at its current position. The channel
+	 * is not closed.
+	 */
+	public int export(FileChannel channel, Format format, boolean gzip)
+			throws IOException {
+		return export(Channels.newOutputStream(channel), format, gzip);
+	}
+
+	/**
+	 * Write the collection to a file in the background. The file is written
+	 * under a temporary name and renamed when complete, so it is never seen
+	 * half written.
+	 */
+	public void exportInBackground(final File file, final Format format,
+			final boolean gzip, final Listener listener) {
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				final int rows;
+				try {
+					rows = exportTo(file, format, gzip);
+				} catch (final IOException e) {
+					Log.e(LOG_TAG, "Export to " + file + " failed "
+							+ e.getLocalizedMessage());
+					handler.post(new Runnable() {
+						@Override
+						public void run() {
+							listener.onFailed(file, e);
+						}
+					});
+					return;
+				}
+
+				handler.post(new Runnable() {
+					@Override
+					public void run() {
+						listener.onExported(file, rows);
+					}
+				});
+			}
+		}, "CollectionExport").start();
+	}
+
+	private int exportTo(File file, Format format, boolean gzip)
+			throws IOException {
+		long start = System.currentTimeMillis();
+		File tmp = new File(file.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(tmp);
+		int rows;
+		boolean written = false;
+		try {
+			rows = export(out.getChannel(), format, gzip);
+			out.getFD().sync(); // never rename a file that isn't on the disk
+			written = true;
+		} finally {
+			out.close();
+			if (!written) {
+				tmp.delete();
+			}
+		}
+
+		if (!tmp.renameTo(file)) {
+			tmp.delete();
+			throw new IOException("Could not replace " + file);
+		}
+		Log.i(LOG_TAG, "Exported " + rows + " cards to " + file + " in "
+				+ (System.currentTimeMillis() - start) + " ms");
+		return rows;
+	}
+
+	private void writeCsvRow(Writer writer, int card, int count)
+			throws IOException {
+		writeCsvField(writer, catalogue.getName(card));
+		writer.write(',');
+		writeCsvField(writer, catalogue.getSetCode(card));
+		writer.write(',');
+		writeCsvField(writer, catalogue.getCollectorNumber(card));
+		writer.write(',');
+		writer.write(Integer.toString(count));
+		writer.write('\n');
+	}
+
+	private static void writeCsvField(Writer writer, String value)
+			throws IOException {
+		boolean quote = false;
+		for (int i = 0; i < value.length() && !quote; i++) {
+			char c = value.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+
+		if (!quote) {
+			writer.write(value);
+			return;
+		}
+
+		writer.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"') {
+				writer.write('"'); // doubled
+			}
+			writer.write(c);
+		}
+		writer.write('"');
+	}
+
+	private void writeJsonRow(Writer writer, int card, int count)
+			throws IOException {
+		writer.write("{\"name\":");
+		writeJsonString(writer, catalogue.getName(card));
+		writer.write(",\"set\":");
+		writeJsonString(writer, catalogue.getSetCode(card));
+		writer.write(",\"number\":");
+		writeJsonString(writer, catalogue.getCollectorNumber(card));
+		writer.write(",\"count\":");
+		writer.write(Integer.toString(count));
+		writer.write("}\n");
+	}
+
+	private static void writeJsonString(Writer writer, String value)
+			throws IOException {
+		writer.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				writer.write("\\\"");
+				break;
+			case '\\':
+				writer.write("\\\\");
+				break;
+			case '\n':
+				writer.write("\\n");
+				break;
+			case '\r':
+				writer.write("\\r");
+				break;
+			case '\t':
+				writer.write("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					String hex = Integer.toHexString(c);
+					writer.write("\\u00");
+					if (hex.length() < 2) {
+						writer.write('0');
+					}
+					writer.write(hex);
+				} else {
+					writer.write(c);
+				}
+			}
+		}
+		writer.write('"');
+	}
+}
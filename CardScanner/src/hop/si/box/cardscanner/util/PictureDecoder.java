@@ -0,0 +1,185 @@
+package hop.si.box.cardscanner.util;
+
+import java.io.IOException;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.Build;
+
+/**
+ * Decodes the JPEG pictures of the camera for the OCR without ever holding the
+ * full resolution picture in memory:
+ * -> Only the part of the picture that is read is decoded (BitmapRegionDecoder).
+ * -> The picture is downsampled (inSampleSize) as far as the text still has the
+ * target resolution. An 8 or 13 MP picture of a card has far more pixels than
+ * tesseract needs.
+ * -> The bitmaps are taken from a BitmapPool and given back after the OCR
+ * (inBitmap, needs Jelly Bean for the region decoder).
+ *
+ * @author Basti Hoffmeister
+ *
+ */
+public class PictureDecoder {
+
+	/** Width of a card in inch (63 mm). */
+	public static final float CARD_WIDTH_INCH = 2.48f;
+
+	/** Resolution tesseract works best with. */
+	public static final int DEFAULT_TARGET_DPI = 300;
+
+	private final int targetDpi;
+	private final BitmapPool pool;
+
+	/**
+	 * @param targetDpi
+	 *            the minimum resolution of the decoded card
+	 * @param pool
+	 *            the pool to reuse the bitmaps from
+	 */
+	public PictureDecoder(int targetDpi, BitmapPool pool) {
+		this.targetDpi = targetDpi;
+		this.pool = pool;
+	}
+
+	/**
+	 * Open a JPEG picture. The picture is expected to show the card over its
+	 * full width. Close the source when done.
+	 */
+	public Source open(byte[] jpeg) throws IOException {
+		return new Source(BitmapRegionDecoder.newInstance(jpeg, 0,
+				jpeg.length, false));
+	}
+
+	/**
+	 * Give the bitmap of a decoded picture back to the pool. The picture must
+	 * not be used afterwards.
+	 */
+	public void release(Picture picture) {
+		pool.put(picture.bitmap);
+	}
+
+	/**
+	 * The largest power of two (the JPEG decoder only does those) that
+	 * still keeps the card at the target resolution.
+	 */
+	static int computeSampleSize(int pictureWidth, int targetDpi) {
+		float dpi = pictureWidth / CARD_WIDTH_INCH;
+		int sampleSize = 1;
+
+		while (dpi / (sampleSize * 2) >= targetDpi) {
+			sampleSize *= 2;
+		}
+
+		return sampleSize;
+	}
+
+	/**
+	 * An opened JPEG picture.
+	 */
+	public class Source {
+
+		private final BitmapRegionDecoder decoder;
+
+		private Source(BitmapRegionDecoder decoder) {
+			this.decoder = decoder;
+		}
+
+		/** Width of the full picture. */
+		public int getWidth() {
+			return decoder.getWidth();
+		}
+
+		/** Height of the full picture. */
+		public int getHeight() {
+			return decoder.getHeight();
+		}
+
+		/**
+		 * Decode a part of the picture as RGB_565 bitmap. Tesseract only needs
+		 * gray values, which ReadFile.readBitmap() computes from RGB_565
+		 * directly, so there is no need to spend twice the memory on
+		 * ARGB_8888.
+		 *
+		 * @param region
+		 *            the part to decode in picture coordinates
+		 */
+		public Picture decode(Rect region) throws IOException {
+			Rect bounds = new Rect(region);
+			if (!bounds.intersect(0, 0, getWidth(), getHeight())) {
+				throw new IOException("Region is outside of the picture");
+			}
+
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inPreferredConfig = Bitmap.Config.RGB_565;
+			options.inSampleSize = computeSampleSize(getWidth(), targetDpi);
+
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+				// The region decoder rounds the sampled size down
+				options.inBitmap = pool.get(
+						Math.max(1, bounds.width() / options.inSampleSize),
+						Math.max(1, bounds.height() / options.inSampleSize),
+						options.inPreferredConfig);
+				options.inMutable = true;
+			}
+
+			Bitmap bitmap = decoder.decodeRegion(bounds, options);
+
+			if (options.inBitmap != null && bitmap != options.inBitmap) {
+				pool.put(options.inBitmap); // not used by the decoder
+			}
+			if (bitmap == null) {
+				throw new IOException("Could not decode the picture");
+			}
+
+			return new Picture(bitmap, bounds, options.inSampleSize);
+		}
+
+		public void close() {
+			decoder.recycle();
+		}
+	}
+
+	/**
+	 * A decoded part of a picture.
+	 */
+	public static class Picture {
+
+		private final Bitmap bitmap;
+		private final Rect region;
+		private final int sampleSize;
+
+		private Picture(Bitmap bitmap, Rect region, int sampleSize) {
+			this.bitmap = bitmap;
+			this.region = region;
+			this.sampleSize = sampleSize;
+		}
+
+		public Bitmap getBitmap() {
+			return bitmap;
+		}
+
+		/** The decoded part in picture coordinates. */
+		public Rect getRegion() {
+			return region;
+		}
+
+		public int getSampleSize() {
+			return sampleSize;
+		}
+
+		/**
+		 * Map a rectangle in picture coordinates to bitmap coordinates.
+		 */
+		public Rect map(Rect rect) {
+			Rect mapped = new Rect((rect.left - region.left) / sampleSize,
+					(rect.top - region.top) / sampleSize,
+					(rect.right - region.left) / sampleSize,
+					(rect.bottom - region.top) / sampleSize);
+			mapped.intersect(0, 0, bitmap.getWidth(), bitmap.getHeight());
+
+			return mapped;
+		}
+	}
+}
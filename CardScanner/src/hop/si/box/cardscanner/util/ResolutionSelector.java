@@ -0,0 +1,137 @@
+package hop.si.box.cardscanner.util;
+
+import java.util.List;
+
+import android.hardware.Camera;
+import android.util.Log;
+
+/**
+ * Picks the camera resolution for the OCR. Tesseract needs a certain x-height
+ * (height of a lower case letter) in pixels to read a text reliably, more
+ * pixels than that only make decoding, thresholding and recognition slower.
+ * So the smallest supported size is chosen that still gives the card name the
+ * target x-height, assuming the card fills the shorter side of the frame.
+ *
+ * The target can be calibrated at runtime: the mean confidence of the
+ * recognized pictures is reported back and the target x-height goes up while
+ * the confidence is bad and down again while it is good.
+ *
+ * @author Basti Hoffmeister
+ *
+ */
+public class ResolutionSelector {
+
+	private static final String LOG_TAG = "ResolutionSelector";
+
+	/** x-height of the card name relative to the card width (~1.6 of 63 mm). */
+	public static final float NAME_X_HEIGHT = 0.025f;
+
+	/** x-height in pixels tesseract reads well. */
+	public static final int DEFAULT_X_HEIGHT = 20;
+	public static final int MIN_X_HEIGHT = 12;
+	public static final int MAX_X_HEIGHT = 40;
+
+	// Calibration
+	private static final int LOW_CONFIDENCE = 60; // raise the target below
+	private static final int HIGH_CONFIDENCE = 85; // lower the target above
+	private static final int SAMPLES = 5; // results needed for a decision
+	private static final float STEP = 1.25f; // change of the target per decision
+
+	private int targetXHeight; // guarded by this
+	private int confidenceSum; // guarded by this
+	private int samples; // guarded by this
+
+	public ResolutionSelector() {
+		this(DEFAULT_X_HEIGHT);
+	}
+
+	/**
+	 * @param targetXHeight
+	 *            the x-height of the card name in pixels to start with
+	 */
+	public ResolutionSelector(int targetXHeight) {
+		this.targetXHeight = clamp(targetXHeight);
+	}
+
+	public synchronized int getTargetXHeight() {
+		return targetXHeight;
+	}
+
+	/**
+	 * The x-height of the card name in a frame of the given size.
+	 */
+	public static float getXHeight(Camera.Size size) {
+		return Math.min(size.width, size.height) * NAME_X_HEIGHT;
+	}
+
+	/**
+	 * Choose the smallest size that reaches the target x-height. If none does
+	 * the largest size is returned.
+	 *
+	 * @param sizes
+	 *            the supported picture or preview sizes
+	 * @return the size to use or null if the list is empty
+	 */
+	public Camera.Size select(List<Camera.Size> sizes) {
+		if (sizes == null) {
+			return null;
+		}
+
+		int target = getTargetXHeight();
+		Camera.Size best = null; // smallest size reaching the target
+		Camera.Size largest = null;
+
+		for (Camera.Size size : sizes) {
+			int pixels = size.width * size.height;
+
+			if (getXHeight(size) >= target
+					&& (best == null || pixels < best.width * best.height)) {
+				best = size;
+			}
+			if (largest == null || pixels > largest.width * largest.height) {
+				largest = size;
+			}
+		}
+
+		return best != null ? best : largest;
+	}
+
+	/**
+	 * Report the mean confidence of a recognized picture. Every few results
+	 * the target x-height is adjusted.
+	 *
+	 * @return true if the target changed, so the resolution should be
+	 *         selected again
+	 */
+	public synchronized boolean report(int meanConfidence) {
+		confidenceSum += meanConfidence;
+		samples++;
+
+		if (samples < SAMPLES) {
+			return false;
+		}
+
+		int mean = confidenceSum / samples;
+		confidenceSum = 0;
+		samples = 0;
+
+		int old = targetXHeight;
+		if (mean < LOW_CONFIDENCE) {
+			targetXHeight = clamp(Math.round(targetXHeight * STEP));
+		} else if (mean > HIGH_CONFIDENCE) {
+			targetXHeight = clamp(Math.round(targetXHeight / STEP));
+		}
+
+		if (targetXHeight == old) {
+			return false;
+		}
+
+		Log.d(LOG_TAG, "Mean confidence " + mean + "%, target x-height now "
+				+ targetXHeight + " px.");
+		return true;
+	}
+
+	private static int clamp(int xHeight) {
+		return Math.max(MIN_X_HEIGHT, Math.min(MAX_X_HEIGHT, xHeight));
+	}
+}
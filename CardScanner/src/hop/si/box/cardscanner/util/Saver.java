@@ -1,13 +1,311 @@
 package hop.si.box.cardscanner.util;
 
+import hop.si.box.cardscanner.CardCatalogue;
+
+import java.io.File;
+import java.io.IOException;
+
+import android.util.Log;
+
 /**
- * Save the cards in a text file list.
- * Maybe send the text file list via email to user.
- * 
+ * Save the scanned cards. Every scan goes into a ScanJournal in the given
+ * directory, which writes it in the background, so saving a card never blocks
+ * the scanner. The scans survive the app being killed, a torn last record is
+ * dropped when the journal is opened again.
+ *
+ * The counts of the collection are kept up to date with every scan and
+ * written to a snapshot every SNAPSHOT_INTERVAL scans and on close. Opening
+ * loads the snapshot and only reads the scans after it from the journal.
+ *
+ * The scans refer to the cards of one catalogue. When it is replaced, the
+ * old catalogue has to be kept as getCatalogueArchive() in the directory, so
+ * the scans can be moved over to the new one. Without it they can't be
+ * counted as the right cards: the journal and snapshot are moved aside (see
+ * getSetAside()) and a new journal is started, so scanning can go on.
+ *
+ * The CollectionExporter writes the collection as a list (e.g. to send it
+ * via email to user).
+ *
+ * All methods are thread-safe.
+ *
  * @author Basti Hoffmeister
  *
  */
 
 public class Saver {
 
+	private static final String LOG_TAG = "Saver";
+
+	public static final String JOURNAL = "scans.journal";
+	public static final String SNAPSHOT = "collection.snapshot";
+	public static final int SNAPSHOT_INTERVAL = 500; // scans between snapshots
+
+	private final ScanJournal journal;
+	private final CardCollection collection;
+	private final File snapshotFile;
+	private final File setAside;
+
+	// Guarded by this
+	private int unsnapshotted; // scans since the last snapshot
+	private Thread snapshotter; // writing a snapshot, or null
+
+	private Saver(ScanJournal journal, CardCollection collection,
+			File snapshotFile, File setAside) {
+		this.journal = journal;
+		this.collection = collection;
+		this.snapshotFile = snapshotFile;
+		this.setAside = setAside;
+	}
+
+	/**
+	 * Where a replaced catalogue is kept until the scans are moved to the new
+	 * one.
+	 */
+	public static File getCatalogueArchive(File dir, int fingerprint) {
+		return new File(dir, "cards-" + Integer.toHexString(fingerprint)
+				+ ".cat");
+	}
+
+	/**
+	 * Where the journal of another catalogue is moved when that catalogue
+	 * isn't archived. The name doesn't exist yet.
+	 */
+	private static File getSetAsideFile(File dir, String prefix,
+			int fingerprint, String suffix) {
+		String name = prefix + "-" + Integer.toHexString(fingerprint);
+		File file = new File(dir, name + suffix);
+		for (int i = 1; file.exists(); i++) {
+			file = new File(dir, name + "-" + i + suffix);
+		}
+		return file;
+	}
+
+	/**
+	 * Open the scans saved in a directory (recovering them after a crash).
+	 * Reads the snapshot and the scans after it, so don't call it on the UI
+	 * thread.
+	 *
+	 * @param catalogue
+	 *            the catalogue the scanned card ids refer to
+	 */
+	public static Saver open(File dir, CardCatalogue catalogue)
+			throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Could not create " + dir);
+		}
+
+		File journalFile = new File(dir, JOURNAL);
+		File snapshotFile = new File(dir, SNAPSHOT);
+		CardCollection collection = CardCollection.readSnapshot(snapshotFile,
+				catalogue);
+		if (collection == null) {
+			collection = new CardCollection(catalogue);
+		}
+
+		ScanJournal journal;
+		File setAside = null;
+		try {
+			journal = ScanJournal.open(journalFile, collection.getPosition(),
+					catalogue.getFingerprint());
+		} catch (ScanJournal.CatalogueMismatchException e) {
+			int fingerprint = e.getJournalFingerprint();
+			File archive = getCatalogueArchive(dir, fingerprint);
+			if (archive.exists()) {
+				remap(journalFile, CardCatalogue.open(archive), catalogue);
+				archive.delete();
+			} else {
+				// No way to tell which cards were scanned, keep the scans
+				// for later and start over
+				setAside = getSetAsideFile(dir, "scans", fingerprint, ".journal");
+				if (!journalFile.renameTo(setAside)) {
+					throw new IOException("Could not move " + journalFile
+							+ " aside");
+				}
+				snapshotFile.renameTo(getSetAsideFile(dir, "collection",
+						fingerprint, ".snapshot"));
+				Log.w(LOG_TAG, "Scans of catalogue "
+						+ Integer.toHexString(fingerprint) + " moved to "
+						+ setAside);
+			}
+
+			collection = new CardCollection(catalogue);
+			journal = ScanJournal.open(journalFile, catalogue.getFingerprint());
+		}
+
+		if (journal.getEnd() < collection.getPosition()) {
+			Log.w(LOG_TAG, "Snapshot is ahead of the journal, counting all scans");
+			collection = new CardCollection(catalogue);
+		}
+
+		long start = System.currentTimeMillis();
+		long from = collection.getPosition();
+		journal.replay(from, collection);
+		Log.i(LOG_TAG, "Replayed " + (collection.getPosition() - from)
+				/ ScanJournal.RECORD_SIZE + " scans in "
+				+ (System.currentTimeMillis() - start) + " ms, "
+				+ collection.getTotal() + " cards");
+
+		return new Saver(journal, collection, snapshotFile, setAside);
+	}
+
+	/**
+	 * Rewrite a journal for another catalogue, moving every scan to the card
+	 * with the same name, set and collector number. Scans of cards that are
+	 * not in the new catalogue any more are dropped. The journal is replaced
+	 * atomically once the new one is synced.
+	 */
+	private static void remap(File journalFile, final CardCatalogue from,
+			final CardCatalogue to) throws IOException {
+		File tmp = new File(journalFile.getPath() + ".tmp");
+		tmp.delete();
+
+		ScanJournal source = ScanJournal.open(journalFile,
+				from.getFingerprint());
+		final ScanJournal target = ScanJournal.open(tmp, to.getFingerprint());
+		final int[] moved = new int[2]; // moved, dropped
+		final IOException[] failure = new IOException[1];
+		try {
+			source.replay(ScanJournal.HEADER_SIZE, new ScanJournal.Visitor() {
+				@Override
+				public void onScan(long offset, long time, int cardId,
+						int delta, int language) {
+					int card = cardId >= 0 && cardId < from.size() ? to
+							.indexOf(from.getName(cardId),
+									from.getSetCode(cardId),
+									from.getCollectorNumber(cardId)) : -1;
+					if (card < 0) {
+						moved[1]++;
+						return;
+					}
+					try {
+						target.append(time, card, delta, language);
+						moved[0]++;
+					} catch (IOException e) {
+						failure[0] = e;
+					}
+				}
+			});
+		} finally {
+			source.close();
+			target.close(); // syncs the new journal
+		}
+
+		if (failure[0] != null) {
+			tmp.delete();
+			throw failure[0];
+		}
+		if (!tmp.renameTo(journalFile)) {
+			tmp.delete();
+			throw new IOException("Could not replace " + journalFile);
+		}
+		Log.i(LOG_TAG, "Moved " + moved[0] + " scans to the new catalogue, "
+				+ moved[1] + " cards are gone");
+	}
+
+	/**
+	 * Save one more copy of a card.
+	 *
+	 * @param cardId
+	 *            index in the CardCatalogue
+	 * @param language
+	 *            language of the card, e.g. "deu"
+	 */
+	public void add(int cardId, String language) throws IOException {
+		save(cardId, 1, language);
+	}
+
+	/**
+	 * Save that a copy of a card is gone (e.g. scanned by mistake).
+	 */
+	public void remove(int cardId, String language) throws IOException {
+		save(cardId, -1, language);
+	}
+
+	private synchronized void save(int cardId, int delta, String language)
+			throws IOException {
+		long time = System.currentTimeMillis();
+		int packed = ScanJournal.packLanguage(language);
+
+		// Under the lock, so the collection counts the scans in journal order
+		long offset = journal.append(time, cardId, delta, packed);
+		collection.onScan(offset, time, cardId, delta, packed);
+
+		if (++unsnapshotted >= SNAPSHOT_INTERVAL && snapshotter == null) {
+			unsnapshotted = 0;
+			snapshotter = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						snapshot();
+					} catch (IOException e) {
+						Log.e(LOG_TAG, "Could not write snapshot " + e.getLocalizedMessage());
+					} finally {
+						synchronized (Saver.this) {
+							snapshotter = null;
+						}
+					}
+				}
+			}, "CollectionSnapshot");
+			snapshotter.start();
+		}
+	}
+
+	/**
+	 * The counts of the collection, updated with every scan.
+	 */
+	public CardCollection getCollection() {
+		return collection;
+	}
+
+	public ScanJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * The journal that was moved aside on open, because it was saved with
+	 * another catalogue that isn't archived, or null. The collection starts
+	 * empty then, the user should be told.
+	 */
+	public File getSetAside() {
+		return setAside;
+	}
+
+	/**
+	 * Wait until all saved cards are on the disk.
+	 */
+	public void flush() throws IOException {
+		journal.flush();
+	}
+
+	/**
+	 * Write the counts to the snapshot. Only the scans in it need to be
+	 * synced, scanning goes on meanwhile.
+	 */
+	private void snapshot() throws IOException {
+		CardCollection copy = collection.copy();
+		journal.flush(); // covers everything in the copy
+		copy.writeSnapshot(snapshotFile);
+	}
+
+	/**
+	 * Write what is left, snapshot the counts and close the journal. Waits
+	 * for a running snapshot and writes all counts, so don't call it on the UI
+	 * thread.
+	 */
+	public void close() throws IOException {
+		Thread running;
+		synchronized (this) {
+			running = snapshotter;
+		}
+		if (running != null) {
+			try {
+				running.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		journal.close();
+		collection.writeSnapshot(snapshotFile);
+	}
 }
@@ -0,0 +1,454 @@
+package hop.si.box.cardscanner.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import android.util.Log;
+
+/**
+ * Append-only file of scans. Every scan (a card added or removed) is one
+ * fixed-size binary record, the file is never rewritten.
+ *
+ * Appending only copies the record into memory. A background thread writes
+ * everything that piled up in one go and syncs the file once for the whole
+ * batch (group commit), so scanning never waits for the disk. Written records
+ * survive the app being killed right away, syncing makes them survive a power
+ * loss too.
+ *
+ * File format (big endian): magic "HSCN", version, fingerprint of the
+ * CardCatalogue the card ids refer to, then records of 24 bytes:
+ * time in ms (long), card id (int), delta (int), language (int, up to 4 ASCII
+ * characters), CRC32 of the first 20 bytes (int). A crash can leave a torn
+ * tail: a record that was only partly written, or bad records with no valid
+ * one after them. It is cut off when the journal is opened. A corrupt record
+ * with valid ones after it is only skipped (and logged), so the scans after
+ * it are never lost.
+ *
+ * Card ids are indices into the CardCatalogue, so a journal only makes sense
+ * with the catalogue it was written with. Opening it with another catalogue
+ * fails with a CatalogueMismatchException.
+ *
+ * All methods are thread-safe.
+ *
+ * @author Basti Hoffmeister
+ *
+ */
+public class ScanJournal {
+
+	private static final String LOG_TAG = "ScanJournal";
+
+	public static final int MAGIC = 0x4853434E; // "HSCN"
+	public static final int VERSION = 2;
+	public static final int HEADER_SIZE = 12;
+	public static final int RECORD_SIZE = 24;
+
+	private static final int READ_RECORDS = 512; // records per read when replaying
+
+	/**
+	 * Gets the records of the journal when it is replayed.
+	 */
+	public interface Visitor {
+		/**
+		 * @param offset
+		 *            position of the record in the file
+		 * @param language
+		 *            see packLanguage()
+		 */
+		void onScan(long offset, long time, int cardId, int delta, int language);
+	}
+
+	/**
+	 * The journal was written with another catalogue than the one it is
+	 * opened with, so its card ids mean other cards.
+	 */
+	public static class CatalogueMismatchException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int journalFingerprint;
+
+		CatalogueMismatchException(File path, int journalFingerprint) {
+			super("Scan journal " + path + " belongs to catalogue "
+					+ Integer.toHexString(journalFingerprint));
+			this.journalFingerprint = journalFingerprint;
+		}
+
+		/** The fingerprint of the catalogue the journal was written with. */
+		public int getJournalFingerprint() {
+			return journalFingerprint;
+		}
+	}
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final Thread writer;
+	private final Object lock = new Object();
+
+	// All guarded by lock
+	private ByteBuffer pending = ByteBuffer.allocate(64 * RECORD_SIZE);
+	private ByteBuffer writing = ByteBuffer.allocate(64 * RECORD_SIZE);
+	private long end; // after the last appended record
+	private long durableEnd; // after the last synced record
+	private IOException failure; // the writer died
+	private boolean closed;
+
+	private final CRC32 crc = new CRC32(); // only used by append (under lock)
+
+	private ScanJournal(RandomAccessFile file, long end) {
+		this.file = file;
+		this.channel = file.getChannel();
+		this.end = end;
+		this.durableEnd = end;
+		this.writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		}, "ScanJournal");
+		writer.start();
+	}
+
+	/**
+	 * Open a journal, creating it if needed. Cuts off a torn tail left by a
+	 * crash, so the journal always ends with a valid record.
+	 *
+	 * @param fingerprint
+	 *            CardCatalogue.getFingerprint() of the catalogue the card ids
+	 *            refer to
+	 * @throws CatalogueMismatchException
+	 *             if the journal was written with another catalogue
+	 */
+	public static ScanJournal open(File path, int fingerprint)
+			throws IOException {
+		return open(path, HEADER_SIZE, fingerprint);
+	}
+
+	/**
+	 * Open a journal, only checking the records from the given offset on.
+	 * Records before it are known to be fine (e.g. covered by a snapshot), so
+	 * opening a long journal doesn't have to read all of it. If the journal is
+	 * shorter than that, all records are checked.
+	 */
+	public static ScanJournal open(File path, long checkFrom, int fingerprint)
+			throws IOException {
+		if (checkFrom < HEADER_SIZE || (checkFrom - HEADER_SIZE) % RECORD_SIZE != 0) {
+			throw new IllegalArgumentException("Not a record offset: " + checkFrom);
+		}
+
+		RandomAccessFile file = new RandomAccessFile(path, "rw");
+		try {
+			FileChannel channel = file.getChannel();
+			long end;
+
+			if (channel.size() < HEADER_SIZE) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putInt(MAGIC).putInt(VERSION).putInt(fingerprint).flip();
+				channel.truncate(0);
+				writeFully(channel, header, 0);
+				channel.force(true);
+				end = HEADER_SIZE;
+			} else {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				readFully(channel, header, 0);
+				if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+					throw new IOException("Not a scan journal: " + path);
+				}
+				if (header.getInt(8) != fingerprint) {
+					throw new CatalogueMismatchException(path, header.getInt(8));
+				}
+				end = recover(channel,
+						checkFrom <= channel.size() ? checkFrom : HEADER_SIZE);
+			}
+
+			return new ScanJournal(file, end);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Find the end of the last valid record and cut off everything after it.
+	 * Corrupt records before it stay, replaying skips them.
+	 */
+	private static long recover(FileChannel channel, long from)
+			throws IOException {
+		long size = channel.size();
+		final long[] end = { from };
+
+		read(channel, from, size, new Visitor() {
+			@Override
+			public void onScan(long offset, long time, int cardId, int delta,
+					int language) {
+				end[0] = offset + RECORD_SIZE;
+			}
+		});
+
+		if (end[0] < size) {
+			Log.w(LOG_TAG, "Cutting off " + (size - end[0])
+					+ " bytes of torn scans");
+			channel.truncate(end[0]);
+			channel.force(true);
+		}
+		return end[0];
+	}
+
+	/**
+	 * Add a scan. Returns at once, the record is written in the background.
+	 *
+	 * @param delta
+	 *            number of copies added (negative if removed)
+	 * @param language
+	 *            see packLanguage()
+	 * @return the offset of the record
+	 */
+	public long append(long time, int cardId, int delta, int language)
+			throws IOException {
+		synchronized (lock) {
+			checkOpen();
+
+			if (pending.remaining() < RECORD_SIZE) {
+				ByteBuffer bigger = ByteBuffer.allocate(pending.capacity() * 2);
+				pending.flip();
+				bigger.put(pending);
+				pending = bigger;
+			}
+
+			int start = pending.position();
+			pending.putLong(time).putInt(cardId).putInt(delta).putInt(language);
+			crc.reset();
+			crc.update(pending.array(), start, RECORD_SIZE - 4);
+			pending.putInt((int) crc.getValue());
+
+			long offset = end;
+			end += RECORD_SIZE;
+			lock.notifyAll();
+			return offset;
+		}
+	}
+
+	/**
+	 * Wait until everything appended so far is synced to the disk.
+	 */
+	public void flush() throws IOException {
+		synchronized (lock) {
+			long target = end;
+			while (durableEnd < target) {
+				checkOpen();
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while flushing");
+				}
+			}
+		}
+	}
+
+	/**
+	 * The offset after the last appended record. Scans appended later are
+	 * replayed by replay(getEnd(), ...).
+	 */
+	public long getEnd() {
+		synchronized (lock) {
+			return end;
+		}
+	}
+
+	/**
+	 * The offset after the last record that is synced to the disk.
+	 */
+	public long getDurableEnd() {
+		synchronized (lock) {
+			return durableEnd;
+		}
+	}
+
+	/**
+	 * Read all records that are written, starting at the given offset.
+	 * Corrupt records are skipped.
+	 */
+	public void replay(long from, Visitor visitor) throws IOException {
+		if (from < HEADER_SIZE || (from - HEADER_SIZE) % RECORD_SIZE != 0) {
+			throw new IllegalArgumentException("Not a record offset: " + from);
+		}
+		int skipped = read(channel, from, getDurableEnd(), visitor);
+		if (skipped > 0) {
+			Log.w(LOG_TAG, "Skipped " + skipped + " corrupt scans");
+		}
+	}
+
+	/**
+	 * Write and sync what is left and close the file.
+	 */
+	public void close() throws IOException {
+		synchronized (lock) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			lock.notifyAll();
+		}
+
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		file.close();
+
+		synchronized (lock) {
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	private void checkOpen() throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+		if (closed) {
+			throw new IOException("Scan journal is closed");
+		}
+	}
+
+	/**
+	 * Swap the buffers, write what was pending and sync it, until closed and
+	 * nothing is left. Appends piling up while syncing form the next batch.
+	 */
+	private void writeLoop() {
+		while (true) {
+			long position;
+			synchronized (lock) {
+				while (pending.position() == 0 && !closed) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						// Only close() ends the writer
+					}
+				}
+				if (pending.position() == 0) {
+					return; // closed and nothing left
+				}
+
+				ByteBuffer batch = pending;
+				pending = writing;
+				writing = batch;
+				writing.flip();
+				position = end - writing.remaining();
+			}
+
+			try {
+				long batchEnd = position + writing.remaining();
+				writeFully(channel, writing, position);
+				channel.force(false);
+				writing.clear();
+
+				synchronized (lock) {
+					durableEnd = batchEnd;
+					lock.notifyAll();
+				}
+			} catch (IOException e) {
+				Log.e(LOG_TAG, "Could not write scans " + e.getLocalizedMessage());
+				synchronized (lock) {
+					failure = e;
+					lock.notifyAll();
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Read the valid records between from and to, skipping corrupt ones.
+	 *
+	 * @return the number of corrupt records
+	 */
+	private static int read(FileChannel channel, long from, long to,
+			Visitor visitor) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(READ_RECORDS * RECORD_SIZE);
+		CRC32 check = new CRC32();
+		long offset = from;
+		int corrupt = 0;
+
+		while (offset + RECORD_SIZE <= to) {
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), (to - offset)
+					/ RECORD_SIZE * RECORD_SIZE));
+			readFully(channel, buffer, offset);
+			buffer.flip();
+
+			while (buffer.remaining() >= RECORD_SIZE) {
+				int start = buffer.position();
+				check.reset();
+				check.update(buffer.array(), start, RECORD_SIZE - 4);
+				if (buffer.getInt(start + RECORD_SIZE - 4) == (int) check.getValue()) {
+					visitor.onScan(offset, buffer.getLong(start),
+							buffer.getInt(start + 8), buffer.getInt(start + 12),
+							buffer.getInt(start + 16));
+				} else {
+					corrupt++;
+				}
+				buffer.position(start + RECORD_SIZE);
+				offset += RECORD_SIZE;
+			}
+		}
+		return corrupt;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer,
+			long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				throw new IOException("Unexpected end of scan journal");
+			}
+			position += read;
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer,
+			long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	/**
+	 * Pack a language code of up to 4 ASCII characters (e.g. "deu") into an
+	 * int for the journal.
+	 */
+	public static int packLanguage(String language) {
+		if (language.length() > 4) {
+			throw new IllegalArgumentException("Language code too long: "
+					+ language);
+		}
+		int packed = 0;
+		for (int i = 0; i < language.length(); i++) {
+			char c = language.charAt(i);
+			if (c == 0 || c > 127) {
+				throw new IllegalArgumentException("Not an ASCII language code: "
+						+ language);
+			}
+			packed = packed << 8 | c;
+		}
+		return packed;
+	}
+
+	/** The language code packed by packLanguage(). */
+	public static String unpackLanguage(int packed) {
+		StringBuilder language = new StringBuilder(4);
+		for (int shift = 24; shift >= 0; shift -= 8) {
+			int c = packed >>> shift & 0xFF;
+			if (c != 0) {
+				language.append((char) c);
+			}
+		}
+		return language.toString();
+	}
+}
@@ -0,0 +1,68 @@
+package hop.si.box.cardscanner.tools;
+
+import hop.si.box.cardscanner.CardCatalogue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Builds the card catalogue for the app (assets/cards.cat) on the build host.
+ * Reads one card per line, tab separated: name, set code, collector number.
+ * Empty lines and lines starting with # are skipped.
+ *
+ * Compile and run from CardScanner/:
+ *
+ * javac -d bin/tools src/hop/si/box/cardscanner/CardCatalogue.java
+ * tools/src/hop/si/box/cardscanner/tools/BuildCatalogue.java
+ *
+ * java -cp bin/tools hop.si.box.cardscanner.tools.BuildCatalogue cards.tsv
+ * assets/cards.cat
+ *
+ * Use - as input to read from stdin.
+ *
+ * @author Basti Hoffmeister
+ *
+ */
+public class BuildCatalogue {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: BuildCatalogue <cards.tsv|-> <cards.cat>");
+			System.exit(2);
+		}
+
+		InputStream in = "-".equals(args[0]) ? System.in : new FileInputStream(
+				args[0]);
+		CardCatalogue.Builder builder = new CardCatalogue.Builder();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in,
+				"UTF-8"));
+		try {
+			String line;
+			int number = 0;
+			while ((line = reader.readLine()) != null) {
+				number++;
+				if (line.trim().length() == 0 || line.startsWith("#")) {
+					continue;
+				}
+
+				String[] fields = line.split("\t", -1);
+				if (fields.length != 3 || fields[0].trim().length() == 0) {
+					System.err.println("Skipping line " + number + ": " + line);
+					continue;
+				}
+				builder.add(fields[0].trim(), fields[1].trim(), fields[2].trim());
+			}
+		} finally {
+			reader.close();
+		}
+
+		File out = new File(args[1]);
+		builder.write(out);
+		System.out.println("Wrote " + builder.size() + " cards to " + out
+				+ " (" + out.length() + " bytes)");
+	}
+}
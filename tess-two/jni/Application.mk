@@ -1,5 +1,5 @@
 APP_STL := gnustl_static
-APP_ABI := armeabi armeabi-v7a x86 # mips has problems with gnustl_static
+APP_ABI := armeabi armeabi-v7a arm64-v8a x86 x86_64 # mips has problems with gnustl_static
 APP_OPTIM := release
 APP_PLATFORM := android-8
 APP_CPPFLAGS += -fexceptions -frtti
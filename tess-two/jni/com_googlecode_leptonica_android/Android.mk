@@ -43,6 +43,7 @@ LOCAL_SRC_FILES += \
   utilities.cpp \
   readfile.cpp \
   writefile.cpp \
+  pipeline.cpp \
   jni.cpp
   
 LOCAL_C_INCLUDES += \
@@ -0,0 +1,177 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include "common.h"
+
+#include <math.h>
+
+#ifdef __cplusplus
+extern "C" {
+#endif  /* __cplusplus */
+
+/*
+ * Operation codes, must match the OP_* constants in Pipeline.java. Each code
+ * is followed by its int arguments in the ops array, the float arguments are
+ * read in order from the params array.
+ */
+enum {
+  OP_CONVERT_TO_8 = 1,          // no arguments
+  OP_BACKGROUND_NORM_MORPH = 2, // ints: reduction, size, bgval
+  OP_OTSU_THRESHOLD = 3,        // ints: sizeX, sizeY, smoothX, smoothY; floats: scoreFract
+  OP_DESKEW = 4,                // ints: sweepReduction, searchReduction, quality;
+                                // floats: sweepRange, sweepDelta, searchMinDelta
+  OP_ROTATE = 5,                // ints: quality; floats: degrees
+  OP_UNSHARP_MASKING = 6,       // ints: halfwidth; floats: fract
+  OP_SCALE = 7                  // floats: scaleX, scaleY
+};
+
+static PIX *rotate(PIX *pixs, l_float32 degrees, bool quality) {
+  l_float32 radians = degrees * 3.1415926535 / 180.0;
+
+  if (pixGetDepth(pixs) == 1 && quality) {
+    return pixRotateBinaryNice(pixs, radians, L_BRING_IN_WHITE);
+  }
+
+  l_int32 type = quality ? L_ROTATE_AREA_MAP : L_ROTATE_SAMPLING;
+  return pixRotate(pixs, radians, type, L_BRING_IN_WHITE, 0, 0);
+}
+
+/**
+ * Runs a single operation. Returns pixs itself if the operation doesn't
+ * change the image, a new Pix otherwise, or NULL on failure.
+ */
+static PIX *execute_op(PIX *pixs, const jint *ops, int *op, const jfloat *params, int *param) {
+  PIX *pixd = NULL;
+
+  switch (ops[(*op)++]) {
+  case OP_CONVERT_TO_8:
+    if (pixGetDepth(pixs) == 8 && pixGetColormap(pixs) == NULL) {
+      pixd = pixs;
+    } else {
+      pixd = pixConvertTo8(pixs, FALSE);
+    }
+    break;
+  case OP_BACKGROUND_NORM_MORPH: {
+    l_int32 reduction = ops[(*op)++];
+    l_int32 size = ops[(*op)++];
+    l_int32 bgval = ops[(*op)++];
+    pixd = pixBackgroundNormMorph(pixs, NULL, reduction, size, bgval);
+    break;
+  }
+  case OP_OTSU_THRESHOLD: {
+    l_int32 sizeX = ops[(*op)++];
+    l_int32 sizeY = ops[(*op)++];
+    l_int32 smoothX = ops[(*op)++];
+    l_int32 smoothY = ops[(*op)++];
+    l_float32 scoreFract = params[(*param)++];
+    if (pixOtsuAdaptiveThreshold(pixs, sizeX, sizeY, smoothX, smoothY, scoreFract, NULL,
+                                 &pixd)) {
+      pixd = NULL;
+    }
+    break;
+  }
+  case OP_DESKEW: {
+    l_int32 sweepReduction = ops[(*op)++];
+    l_int32 searchReduction = ops[(*op)++];
+    bool quality = ops[(*op)++] != 0;
+    l_float32 sweepRange = params[(*param)++];
+    l_float32 sweepDelta = params[(*param)++];
+    l_float32 searchMinDelta = params[(*param)++];
+    l_float32 angle, conf;
+    if (pixFindSkewSweepAndSearch(pixs, &angle, &conf, sweepReduction, searchReduction,
+                                  sweepRange, sweepDelta, searchMinDelta)
+        || conf <= 0 || fabs(angle) < searchMinDelta) {
+      pixd = pixs; // No (reliable) skew found, keep the image as it is
+    } else {
+      pixd = rotate(pixs, angle, quality);
+    }
+    break;
+  }
+  case OP_ROTATE: {
+    bool quality = ops[(*op)++] != 0;
+    l_float32 degrees = params[(*param)++];
+    pixd = degrees == 0 ? pixs : rotate(pixs, degrees, quality);
+    break;
+  }
+  case OP_UNSHARP_MASKING: {
+    l_int32 halfwidth = ops[(*op)++];
+    l_float32 fract = params[(*param)++];
+    pixd = pixUnsharpMasking(pixs, halfwidth, fract);
+    break;
+  }
+  case OP_SCALE: {
+    l_float32 scaleX = params[(*param)++];
+    l_float32 scaleY = params[(*param)++];
+    if (scaleX == 1.0 && scaleY == 1.0) {
+      pixd = pixs;
+    } else {
+      pixd = pixScale(pixs, scaleX, scaleY);
+    }
+    break;
+  }
+  default:
+    LOGE("Unknown pipeline operation %d", ops[*op - 1]);
+  }
+
+  return pixd;
+}
+
+/************
+ * Pipeline *
+ ************/
+
+jlong Java_com_googlecode_leptonica_android_Pipeline_nativeExecute(JNIEnv *env, jclass clazz,
+                                                                   jlong nativePix,
+                                                                   jintArray opsArray,
+                                                                   jfloatArray paramsArray) {
+  PIX *pixs = (PIX *) nativePix;
+  jint ops_length = env->GetArrayLength(opsArray);
+  jint *ops = env->GetIntArrayElements(opsArray, NULL);
+  jfloat *params = env->GetFloatArrayElements(paramsArray, NULL);
+
+  // Only the current image is kept, each intermediate is destroyed as soon as
+  // the next operation has produced its result.
+  PIX *pixd = pixs;
+  int op = 0;
+  int param = 0;
+
+  while (op < ops_length) {
+    PIX *pixt = execute_op(pixd, ops, &op, params, &param);
+
+    if (pixt != pixd && pixd != pixs) {
+      pixDestroy(&pixd);
+    }
+    if (pixt == NULL) {
+      LOGE("Pipeline failed at operation %d", op);
+      pixd = NULL;
+      break;
+    }
+
+    pixd = pixt;
+  }
+
+  env->ReleaseIntArrayElements(opsArray, ops, JNI_ABORT);
+  env->ReleaseFloatArrayElements(paramsArray, params, JNI_ABORT);
+
+  // The caller always gets a new Pix, even if no operation changed the image
+  if (pixd == pixs) {
+    pixd = pixCopy(NULL, pixs);
+  }
+
+  return (jlong) pixd;
+}
+
+#ifdef __cplusplus
+}
+#endif  /* __cplusplus */
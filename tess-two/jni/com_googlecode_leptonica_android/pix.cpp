@@ -21,16 +21,16 @@
 extern "C" {
 #endif  /* __cplusplus */
 
-jint Java_com_googlecode_leptonica_android_Pix_nativeCreatePix(JNIEnv *env, jclass clazz, jint w,
-                                                               jint h, jint d) {
+jlong Java_com_googlecode_leptonica_android_Pix_nativeCreatePix(JNIEnv *env, jclass clazz, jint w,
+                                                                jint h, jint d) {
   PIX *pix = pixCreate((l_int32) w, (l_int32) h, (l_int32) d);
 
-  return (jint) pix;
+  return (jlong) pix;
 }
 
-jint Java_com_googlecode_leptonica_android_Pix_nativeCreateFromData(JNIEnv *env, jclass clazz,
-                                                                    jbyteArray data, jint w,
-                                                                    jint h, jint d) {
+jlong Java_com_googlecode_leptonica_android_Pix_nativeCreateFromData(JNIEnv *env, jclass clazz,
+                                                                     jbyteArray data, jint w,
+                                                                     jint h, jint d) {
   PIX *pix = pixCreateNoInit((l_int32) w, (l_int32) h, (l_int32) d);
 
   jbyte *data_buffer = env->GetByteArrayElements(data, NULL);
@@ -41,11 +41,11 @@ jint Java_com_googlecode_leptonica_android_Pix_nativeCreateFromData(JNIEnv *env,
 
   env->ReleaseByteArrayElements(data, data_buffer, JNI_ABORT);
 
-  return (jint) pix;
+  return (jlong) pix;
 }
 
 jboolean Java_com_googlecode_leptonica_android_Pix_nativeGetData(JNIEnv *env, jclass clazz,
-                                                                 jint nativePix, jbyteArray data) {
+                                                                 jlong nativePix, jbyteArray data) {
   PIX *pix = (PIX *) nativePix;
 
   jbyte *data_buffer = env->GetByteArrayElements(data, NULL);
@@ -60,7 +60,7 @@ jboolean Java_com_googlecode_leptonica_android_Pix_nativeGetData(JNIEnv *env, jc
 }
 
 jint Java_com_googlecode_leptonica_android_Pix_nativeGetDataSize(JNIEnv *env, jclass clazz,
-                                                                 jint nativePix) {
+                                                                 jlong nativePix) {
   PIX *pix = (PIX *) nativePix;
 
   size_t size = 4 * pixGetWpl(pix) * pixGetHeight(pix);
@@ -68,23 +68,23 @@ jint Java_com_googlecode_leptonica_android_Pix_nativeGetDataSize(JNIEnv *env, jc
   return (jint) size;
 }
 
-jint Java_com_googlecode_leptonica_android_Pix_nativeClone(JNIEnv *env, jclass clazz,
-                                                           jint nativePix) {
+jlong Java_com_googlecode_leptonica_android_Pix_nativeClone(JNIEnv *env, jclass clazz,
+                                                            jlong nativePix) {
   PIX *pixs = (PIX *) nativePix;
   PIX *pixd = pixClone(pixs);
 
-  return (jint) pixd;
+  return (jlong) pixd;
 }
 
-jint Java_com_googlecode_leptonica_android_Pix_nativeCopy(JNIEnv *env, jclass clazz, jint nativePix) {
+jlong Java_com_googlecode_leptonica_android_Pix_nativeCopy(JNIEnv *env, jclass clazz, jlong nativePix) {
   PIX *pixs = (PIX *) nativePix;
   PIX *pixd = pixCopy(NULL, pixs);
 
-  return (jint) pixd;
+  return (jlong) pixd;
 }
 
 jboolean Java_com_googlecode_leptonica_android_Pix_nativeInvert(JNIEnv *env, jclass clazz,
-                                                                jint nativePix) {
+                                                                jlong nativePix) {
   PIX *pixs = (PIX *) nativePix;
 
   if (pixInvert(pixs, pixs)) {
@@ -95,14 +95,14 @@ jboolean Java_com_googlecode_leptonica_android_Pix_nativeInvert(JNIEnv *env, jcl
 }
 
 void Java_com_googlecode_leptonica_android_Pix_nativeDestroy(JNIEnv *env, jclass clazz,
-                                                             jint nativePix) {
+                                                             jlong nativePix) {
   PIX *pix = (PIX *) nativePix;
 
   pixDestroy(&pix);
 }
 
 jboolean Java_com_googlecode_leptonica_android_Pix_nativeGetDimensions(JNIEnv *env, jclass clazz,
-                                                                       jint nativePix,
+                                                                       jlong nativePix,
                                                                        jintArray dimensions) {
   PIX *pix = (PIX *) nativePix;
   jint *dimensionArray = env->GetIntArrayElements(dimensions, NULL);
@@ -122,34 +122,30 @@ jboolean Java_com_googlecode_leptonica_android_Pix_nativeGetDimensions(JNIEnv *e
 }
 
 jint Java_com_googlecode_leptonica_android_Pix_nativeGetWidth(JNIEnv *env, jclass clazz,
-                                                              jint nativePix) {
+                                                              jlong nativePix) {
   PIX *pix = (PIX *) nativePix;
 
   return (jint) pixGetWidth(pix);
 }
 
 jint Java_com_googlecode_leptonica_android_Pix_nativeGetHeight(JNIEnv *env, jclass clazz,
-                                                               jint nativePix) {
+                                                               jlong nativePix) {
   PIX *pix = (PIX *) nativePix;
 
   return (jint) pixGetHeight(pix);
 }
 
 jint Java_com_googlecode_leptonica_android_Pix_nativeGetDepth(JNIEnv *env, jclass clazz,
-                                                              jint nativePix) {
+                                                              jlong nativePix) {
   PIX *pix = (PIX *) nativePix;
 
   return (jint) pixGetDepth(pix);
 }
 
-void Java_com_googlecode_leptonica_android_Pix_nativeSetPixel(JNIEnv *env, jclass clazz,
-                                                              jint nativePix, jint xCoord,
-                                                              jint yCoord, jint argbColor) {
-  PIX *pix = (PIX *) nativePix;
-  l_int32 d = pixGetDepth(pix);
-  l_int32 x = (l_int32) xCoord;
-  l_int32 y = (l_int32) yCoord;
-
+/**
+ * Converts an Android ARGB color to a pixel value of the given depth.
+ */
+static l_uint32 argb_to_pixel(l_int32 d, jint argbColor) {
   // These shift values are based on RGBA_8888
   l_uint8 r = (argbColor >> SK_R32_SHIFT) & 0xFF;
   l_uint8 g = (argbColor >> SK_G32_SHIFT) & 0xFF;
@@ -189,22 +185,16 @@ void Java_com_googlecode_leptonica_android_Pix_nativeSetPixel(JNIEnv *env, jclas
       break;
   }
 
-  pixSetPixel(pix, x, y, color);
+  return color;
 }
 
-jint Java_com_googlecode_leptonica_android_Pix_nativeGetPixel(JNIEnv *env, jclass clazz,
-                                                              jint nativePix, jint xCoord,
-                                                              jint yCoord) {
-  PIX *pix = (PIX *) nativePix;
-  l_int32 d = pixGetDepth(pix);
-  l_int32 x = (l_int32) xCoord;
-  l_int32 y = (l_int32) yCoord;
-  l_uint32 pixel;
+/**
+ * Converts a pixel value of the given depth to an Android ARGB color.
+ */
+static jint pixel_to_argb(l_int32 d, l_uint32 pixel) {
   l_uint32 color;
   l_uint8 a, r, g, b;
 
-  pixGetPixel(pix, x, y, &pixel);
-
   switch (d) {
     case 1: // 1-bit binary
       a = 0xFF;
@@ -248,6 +238,281 @@ jint Java_com_googlecode_leptonica_android_Pix_nativeGetPixel(JNIEnv *env, jclas
   return (jint) color;
 }
 
+/**
+ * Reads the raw value of pixel x from a raster line. Same as pixGetPixel(),
+ * without the per-call checks.
+ */
+static inline l_uint32 get_sample(const l_uint32 *line, l_int32 x, l_int32 d) {
+  switch (d) {
+    case 1:
+      return GET_DATA_BIT(line, x);
+    case 2:
+      return GET_DATA_DIBIT(line, x);
+    case 4:
+      return GET_DATA_QBIT(line, x);
+    case 8:
+      return GET_DATA_BYTE(line, x);
+    case 16:
+      return GET_DATA_TWO_BYTES(line, x);
+    default:
+      return line[x];
+  }
+}
+
+/**
+ * Writes the raw value of pixel x to a raster line. Same as pixSetPixel(),
+ * without the per-call checks.
+ */
+static inline void set_sample(l_uint32 *line, l_int32 x, l_int32 d, l_uint32 val) {
+  switch (d) {
+    case 1:
+      SET_DATA_BIT_VAL(line, x, val);
+      break;
+    case 2:
+      SET_DATA_DIBIT(line, x, val);
+      break;
+    case 4:
+      SET_DATA_QBIT(line, x, val);
+      break;
+    case 8:
+      SET_DATA_BYTE(line, x, val);
+      break;
+    case 16:
+      SET_DATA_TWO_BYTES(line, x, val);
+      break;
+    default:
+      line[x] = val;
+      break;
+  }
+}
+
+/**
+ * Copies a rectangle of raw samples between the raster and a byte buffer,
+ * one byte per pixel. The rectangle must lie within the image and the depth
+ * must be at most 8 bpp, which the Java side checks.
+ */
+static void copy_samples(PIX *pix, l_uint8 *buffer, jint stride, jint x, jint y, jint w,
+                         jint h, bool toPix) {
+  l_int32 d = pixGetDepth(pix);
+  l_int32 wpl = pixGetWpl(pix);
+  l_uint32 *line = pixGetData(pix) + y * wpl;
+
+  for (jint j = 0; j < h; j++, line += wpl, buffer += stride) {
+    if (d == 8) {
+      if (toPix) {
+        for (jint i = 0; i < w; i++) {
+          SET_DATA_BYTE(line, x + i, buffer[i]);
+        }
+      } else {
+        for (jint i = 0; i < w; i++) {
+          buffer[i] = GET_DATA_BYTE(line, x + i);
+        }
+      }
+    } else {
+      if (toPix) {
+        for (jint i = 0; i < w; i++) {
+          set_sample(line, x + i, d, buffer[i]);
+        }
+      } else {
+        for (jint i = 0; i < w; i++) {
+          buffer[i] = get_sample(line, x + i, d);
+        }
+      }
+    }
+  }
+}
+
+static void throw_out_of_memory(JNIEnv *env, const char *message) {
+  jclass error = env->FindClass("java/lang/OutOfMemoryError");
+
+  if (error != NULL) {
+    env->ThrowNew(error, message);
+  }
+}
+
+void Java_com_googlecode_leptonica_android_Pix_nativeSetPixel(JNIEnv *env, jclass clazz,
+                                                              jlong nativePix, jint xCoord,
+                                                              jint yCoord, jint argbColor) {
+  PIX *pix = (PIX *) nativePix;
+  l_int32 d = pixGetDepth(pix);
+  l_int32 x = (l_int32) xCoord;
+  l_int32 y = (l_int32) yCoord;
+
+  pixSetPixel(pix, x, y, argb_to_pixel(d, argbColor));
+}
+
+jint Java_com_googlecode_leptonica_android_Pix_nativeGetPixel(JNIEnv *env, jclass clazz,
+                                                              jlong nativePix, jint xCoord,
+                                                              jint yCoord) {
+  PIX *pix = (PIX *) nativePix;
+  l_int32 d = pixGetDepth(pix);
+  l_int32 x = (l_int32) xCoord;
+  l_int32 y = (l_int32) yCoord;
+  l_uint32 pixel;
+
+  pixGetPixel(pix, x, y, &pixel);
+
+  return pixel_to_argb(d, pixel);
+}
+
+void Java_com_googlecode_leptonica_android_Pix_nativeGetPixels(JNIEnv *env, jclass clazz,
+                                                               jlong nativePix,
+                                                               jintArray pixels, jint offset,
+                                                               jint stride, jint x, jint y,
+                                                               jint w, jint h) {
+  PIX *pix = (PIX *) nativePix;
+  l_int32 d = pixGetDepth(pix);
+  l_int32 wpl = pixGetWpl(pix);
+  l_uint32 *line = pixGetData(pix) + y * wpl;
+  jint *row = (jint *) malloc(w * sizeof(jint));
+
+  if (row == NULL) {
+    throw_out_of_memory(env, "Could not allocate a row of pixels");
+    return;
+  }
+
+  for (jint j = 0; j < h; j++, line += wpl) {
+    for (jint i = 0; i < w; i++) {
+      row[i] = pixel_to_argb(d, get_sample(line, x + i, d));
+    }
+
+    env->SetIntArrayRegion(pixels, offset + j * stride, w, row);
+
+    if (env->ExceptionCheck()) {
+      break;
+    }
+  }
+
+  free(row);
+}
+
+void Java_com_googlecode_leptonica_android_Pix_nativeSetPixels(JNIEnv *env, jclass clazz,
+                                                               jlong nativePix,
+                                                               jintArray pixels, jint offset,
+                                                               jint stride, jint x, jint y,
+                                                               jint w, jint h) {
+  PIX *pix = (PIX *) nativePix;
+  l_int32 d = pixGetDepth(pix);
+  l_int32 wpl = pixGetWpl(pix);
+  l_uint32 *line = pixGetData(pix) + y * wpl;
+  jint *row = (jint *) malloc(w * sizeof(jint));
+
+  if (row == NULL) {
+    throw_out_of_memory(env, "Could not allocate a row of pixels");
+    return;
+  }
+
+  for (jint j = 0; j < h; j++, line += wpl) {
+    env->GetIntArrayRegion(pixels, offset + j * stride, w, row);
+
+    if (env->ExceptionCheck()) {
+      break;
+    }
+
+    for (jint i = 0; i < w; i++) {
+      set_sample(line, x + i, d, argb_to_pixel(d, row[i]));
+    }
+  }
+
+  free(row);
+}
+
+void Java_com_googlecode_leptonica_android_Pix_nativeCopySamples(JNIEnv *env, jclass clazz,
+                                                                 jlong nativePix,
+                                                                 jbyteArray samples,
+                                                                 jint offset, jint stride,
+                                                                 jint x, jint y, jint w, jint h,
+                                                                 jboolean toPix) {
+  PIX *pix = (PIX *) nativePix;
+  // Copy row by row, so only the rectangle is copied and not the whole array
+  jbyte *row = (jbyte *) malloc(w);
+
+  if (row == NULL) {
+    throw_out_of_memory(env, "Could not allocate a row of samples");
+    return;
+  }
+
+  for (jint j = 0; j < h; j++) {
+    if (toPix) {
+      env->GetByteArrayRegion(samples, offset + j * stride, w, row);
+
+      if (env->ExceptionCheck()) {
+        break;
+      }
+
+      copy_samples(pix, (l_uint8 *) row, w, x, y + j, w, 1, true);
+    } else {
+      copy_samples(pix, (l_uint8 *) row, w, x, y + j, w, 1, false);
+      env->SetByteArrayRegion(samples, offset + j * stride, w, row);
+
+      if (env->ExceptionCheck()) {
+        break;
+      }
+    }
+  }
+
+  free(row);
+}
+
+jboolean Java_com_googlecode_leptonica_android_Pix_nativeCopySamplesDirect(JNIEnv *env,
+                                                                           jclass clazz,
+                                                                           jlong nativePix,
+                                                                           jobject samples,
+                                                                           jint offset,
+                                                                           jint stride, jint x,
+                                                                           jint y, jint w,
+                                                                           jint h,
+                                                                           jboolean toPix) {
+  PIX *pix = (PIX *) nativePix;
+  l_uint8 *buffer = (l_uint8 *) env->GetDirectBufferAddress(samples);
+
+  if (buffer == NULL) {
+    LOGE("Could not get direct buffer address");
+    return JNI_FALSE;
+  }
+
+  copy_samples(pix, buffer + offset, stride, x, y, w, h, toPix);
+
+  return JNI_TRUE;
+}
+
+jobject Java_com_googlecode_leptonica_android_Pix_nativeGetRaster(JNIEnv *env, jclass clazz,
+                                                                  jlong nativePix) {
+  PIX *pix = (PIX *) nativePix;
+  jlong size = 4 * pixGetWpl(pix) * pixGetHeight(pix);
+
+  return env->NewDirectByteBuffer(pixGetData(pix), size);
+}
+
+jboolean Java_com_googlecode_leptonica_android_Pix_nativeReplaceData(JNIEnv *env, jclass clazz,
+                                                                     jlong nativeDst,
+                                                                     jlong nativeSrc) {
+  PIX *pixd = (PIX *) nativeDst;
+  PIX *pixs = (PIX *) nativeSrc;
+  jboolean result = JNI_TRUE;
+
+  if (pixSizesEqual(pixd, pixs)) {
+    // Keep the existing raster, pixCopy() doesn't reallocate it
+    if (pixCopy(pixd, pixs) == NULL) {
+      result = JNI_FALSE;
+    }
+    pixDestroy(&pixs);
+  } else if (pixTransferAllData(pixd, &pixs, 0, 0)) {
+    // pixs is only destroyed on success
+    pixDestroy(&pixs);
+    result = JNI_FALSE;
+  }
+
+  return result;
+}
+
+jint Java_com_googlecode_leptonica_android_Pix_nativeGetWpl(JNIEnv *env, jclass clazz,
+                                                            jlong nativePix) {
+  PIX *pix = (PIX *) nativePix;
+
+  return (jint) pixGetWpl(pix);
+}
+
 #ifdef __cplusplus
 }
 #endif  /* __cplusplus */
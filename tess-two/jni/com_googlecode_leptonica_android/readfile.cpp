@@ -19,6 +19,110 @@
 #include <string.h>
 #include <android/bitmap.h>
 
+/**
+ * Copies rows of 8 bit pixels into an 8bpp PIX of the same width and height.
+ * Rows in the source are stride bytes apart.
+ */
+static void copy_bytes8_to_pix(PIX *pix, const l_uint8 *src, l_int32 stride) {
+  l_int32 w = pixGetWidth(pix);
+  l_int32 h = pixGetHeight(pix);
+  l_int32 wpl = pixGetWpl(pix);
+  l_uint32 *line = pixGetData(pix);
+
+  for (l_int32 y = 0; y < h; y++) {
+    memcpy(line, src, w);
+
+#ifndef L_BIG_ENDIAN
+    // PIX data is stored in 32-bit words with the leftmost pixel in the most
+    // significant byte, so the bytes of each word have to be swapped here.
+    for (l_int32 i = 0; i < (w + 3) / 4; i++) {
+      l_uint32 word = line[i];
+      line[i] = (word >> 24) | ((word >> 8) & 0xff00) | ((word << 8) & 0xff0000) | (word << 24);
+    }
+#endif
+
+    line += wpl;
+    src += stride;
+  }
+}
+
+/**
+ * Returns the address of a direct buffer holding an 8 bit image or NULL if the
+ * buffer is not direct or too small.
+ */
+static l_uint8 *get_direct_bytes8(JNIEnv *env, jobject buffer, jint w, jint h, jint stride) {
+  l_uint8 *data = (l_uint8 *) env->GetDirectBufferAddress(buffer);
+
+  if (data == NULL) {
+    LOGE("Buffer is not a direct buffer!");
+    return NULL;
+  }
+
+  jlong capacity = env->GetDirectBufferCapacity(buffer);
+
+  if (capacity < (jlong) stride * (h - 1) + w) {
+    LOGE("Buffer is too small for w=%d, h=%d, stride=%d", w, h, stride);
+    return NULL;
+  }
+
+  return data;
+}
+
+/**
+ * Creates an 8bpp PIX from a rectangle of an 8 bit image, e.g. the luminance
+ * plane of a camera frame, in a single pass. With a reduction > 1 every block
+ * of reduction x reduction pixels is averaged into one pixel, remaining rows
+ * and columns that don't fill a whole block are dropped.
+ */
+static PIX *read_bytes8_region(const l_uint8 *src, jint stride, jint x, jint y, jint w, jint h,
+                               jint reduction) {
+  l_int32 dw = w / reduction;
+  l_int32 dh = h / reduction;
+  PIX *pix = pixCreateNoInit(dw, dh, 8);
+
+  if (pix == NULL) {
+    return NULL;
+  }
+
+  src += y * stride + x;
+
+  if (reduction == 1) {
+    copy_bytes8_to_pix(pix, src, stride);
+    return pix;
+  }
+
+  l_int32 wpl = pixGetWpl(pix);
+  l_uint32 *line = pixGetData(pix);
+  l_uint32 *sums = (l_uint32 *) malloc(dw * sizeof(l_uint32));
+  l_uint32 area = reduction * reduction;
+
+  for (l_int32 dy = 0; dy < dh; dy++) {
+    memset(sums, 0, dw * sizeof(l_uint32));
+
+    for (jint r = 0; r < reduction; r++) {
+      const l_uint8 *row = src;
+
+      for (l_int32 dx = 0; dx < dw; dx++) {
+        for (jint c = 0; c < reduction; c++) {
+          sums[dx] += *row++;
+        }
+      }
+
+      src += stride;
+    }
+
+    for (l_int32 dx = 0; dx < dw; dx++) {
+      SET_DATA_BYTE(line, dx, sums[dx] / area);
+    }
+
+    line += wpl;
+  }
+
+  free(sums);
+
+  return pix;
+}
+
 #ifdef __cplusplus
 extern "C" {
 #endif  /* __cplusplus */
@@ -27,8 +131,8 @@ extern "C" {
  * ReadFile *
  ************/
 
-jint Java_com_googlecode_leptonica_android_ReadFile_nativeReadMem(JNIEnv *env, jclass clazz,
-                                                                  jbyteArray image, jint length) {
+jlong Java_com_googlecode_leptonica_android_ReadFile_nativeReadMem(JNIEnv *env, jclass clazz,
+                                                                   jbyteArray image, jint length) {
   jbyte *image_buffer = env->GetByteArrayElements(image, NULL);
   int buffer_length = env->GetArrayLength(image);
 
@@ -36,36 +140,34 @@ jint Java_com_googlecode_leptonica_android_ReadFile_nativeReadMem(JNIEnv *env, j
 
   env->ReleaseByteArrayElements(image, image_buffer, JNI_ABORT);
 
-  return (jint) pix;
+  return (jlong) pix;
 }
 
-jint Java_com_googlecode_leptonica_android_ReadFile_nativeReadBytes8(JNIEnv *env, jclass clazz,
-                                                                     jbyteArray data, jint w,
-                                                                     jint h) {
+jlong Java_com_googlecode_leptonica_android_ReadFile_nativeReadBytes8(JNIEnv *env, jclass clazz,
+                                                                      jbyteArray data, jint w,
+                                                                      jint h) {
   PIX *pix = pixCreateNoInit((l_int32) w, (l_int32) h, 8);
-  l_uint8 **lineptrs = pixSetupByteProcessing(pix, NULL, NULL);
-  jbyte *data_buffer = env->GetByteArrayElements(data, NULL);
-  l_uint8 *byte_buffer = (l_uint8 *) data_buffer;
 
-  for (int i = 0; i < h; i++) {
-    memcpy(lineptrs[i], (byte_buffer + (i * w)), w);
+  if (pix == NULL) {
+    return (jlong) 0;
   }
 
-  env->ReleaseByteArrayElements(data, data_buffer, JNI_ABORT);
-  pixCleanupByteProcessing(pix, lineptrs);
-
-  l_int32 d;
+  l_uint8 *byte_buffer = (l_uint8 *) env->GetPrimitiveArrayCritical(data, NULL);
 
-  pixGetDimensions(pix, &w, &h, &d);
+  if (byte_buffer == NULL) {
+    pixDestroy(&pix);
+    return (jlong) 0;
+  }
 
-  LOGE("Created image width w=%d, h=%d, d=%d", w, h, d);
+  copy_bytes8_to_pix(pix, byte_buffer, w);
+  env->ReleasePrimitiveArrayCritical(data, byte_buffer, JNI_ABORT);
 
-  return (jint) pix;
+  return (jlong) pix;
 }
 
 jboolean Java_com_googlecode_leptonica_android_ReadFile_nativeReplaceBytes8(JNIEnv *env,
                                                                             jclass clazz,
-                                                                            jint nativePix,
+                                                                            jlong nativePix,
                                                                             jbyteArray data,
                                                                             jint srcw, jint srch) {
   PIX *pix = (PIX *) nativePix;
@@ -79,22 +181,106 @@ jboolean Java_com_googlecode_leptonica_android_ReadFile_nativeReplaceBytes8(JNIE
     return JNI_FALSE;
   }
 
-  l_uint8 **lineptrs = pixSetupByteProcessing(pix, NULL, NULL);
-  jbyte *data_buffer = env->GetByteArrayElements(data, NULL);
-  l_uint8 *byte_buffer = (l_uint8 *) data_buffer;
+  l_uint8 *byte_buffer = (l_uint8 *) env->GetPrimitiveArrayCritical(data, NULL);
+
+  if (byte_buffer == NULL) {
+    return JNI_FALSE;
+  }
+
+  copy_bytes8_to_pix(pix, byte_buffer, w);
+  env->ReleasePrimitiveArrayCritical(data, byte_buffer, JNI_ABORT);
+
+  return JNI_TRUE;
+}
+
+jlong Java_com_googlecode_leptonica_android_ReadFile_nativeReadDirectBuffer(JNIEnv *env,
+                                                                            jclass clazz,
+                                                                            jobject buffer, jint w,
+                                                                            jint h, jint stride) {
+  l_uint8 *data = get_direct_bytes8(env, buffer, w, h, stride);
+
+  if (data == NULL) {
+    return (jlong) 0;
+  }
+
+  PIX *pix = pixCreateNoInit((l_int32) w, (l_int32) h, 8);
+
+  if (pix == NULL) {
+    return (jlong) 0;
+  }
+
+  copy_bytes8_to_pix(pix, data, stride);
+
+  return (jlong) pix;
+}
+
+jboolean Java_com_googlecode_leptonica_android_ReadFile_nativeReplaceDirectBuffer(JNIEnv *env,
+                                                                                  jclass clazz,
+                                                                                  jlong nativePix,
+                                                                                  jobject buffer,
+                                                                                  jint srcw,
+                                                                                  jint srch,
+                                                                                  jint stride) {
+  PIX *pix = (PIX *) nativePix;
+  l_int32 w, h, d;
+
+  pixGetDimensions(pix, &w, &h, &d);
+
+  if (d != 8 || (l_int32) srcw != w || (l_int32) srch != h) {
+    LOGE("Failed to replace bytes at w=%d, h=%d, d=%d with w=%d, h=%d", w, h, d, srcw, srch);
+
+    return JNI_FALSE;
+  }
+
+  l_uint8 *data = get_direct_bytes8(env, buffer, srcw, srch, stride);
 
-  for (int i = 0; i < h; i++) {
-    memcpy(lineptrs[i], (byte_buffer + (i * w)), w);
+  if (data == NULL) {
+    return JNI_FALSE;
   }
 
-  env->ReleaseByteArrayElements(data, data_buffer, JNI_ABORT);
-  pixCleanupByteProcessing(pix, lineptrs);
+  copy_bytes8_to_pix(pix, data, stride);
 
   return JNI_TRUE;
 }
 
-jint Java_com_googlecode_leptonica_android_ReadFile_nativeReadFiles(JNIEnv *env, jclass clazz,
-                                                                    jstring dirName, jstring prefix) {
+jlong Java_com_googlecode_leptonica_android_ReadFile_nativeReadNV21(JNIEnv *env, jclass clazz,
+                                                                     jbyteArray data, jint width,
+                                                                     jint x, jint y, jint w,
+                                                                     jint h, jint reduction) {
+  l_uint8 *byte_buffer = (l_uint8 *) env->GetPrimitiveArrayCritical(data, NULL);
+
+  if (byte_buffer == NULL) {
+    return (jlong) 0;
+  }
+
+  // The luminance plane comes first, one byte per pixel without padding
+  PIX *pix = read_bytes8_region(byte_buffer, width, x, y, w, h, reduction);
+
+  env->ReleasePrimitiveArrayCritical(data, byte_buffer, JNI_ABORT);
+
+  return (jlong) pix;
+}
+
+jlong Java_com_googlecode_leptonica_android_ReadFile_nativeReadNV21Direct(JNIEnv *env,
+                                                                           jclass clazz,
+                                                                           jobject buffer,
+                                                                           jint width, jint x,
+                                                                           jint y, jint w, jint h,
+                                                                           jint reduction) {
+  l_uint8 *data = (l_uint8 *) env->GetDirectBufferAddress(buffer);
+
+  if (data == NULL) {
+    LOGE("Buffer is not a direct buffer!");
+    return (jlong) 0;
+  }
+
+  PIX *pix = read_bytes8_region(data, width, x, y, w, h, reduction);
+
+  return (jlong) pix;
+}
+
+jlong Java_com_googlecode_leptonica_android_ReadFile_nativeReadFiles(JNIEnv *env, jclass clazz,
+                                                                     jstring dirName, jstring prefix) {
   PIXA *pixad = NULL;
 
   const char *c_dirName = env->GetStringUTFChars(dirName, NULL);
@@ -114,11 +300,11 @@ jint Java_com_googlecode_leptonica_android_ReadFile_nativeReadFiles(JNIEnv *env,
   env->ReleaseStringUTFChars(dirName, c_dirName);
   env->ReleaseStringUTFChars(prefix, c_prefix);
 
-  return (jint) pixad;
+  return (jlong) pixad;
 }
 
-jint Java_com_googlecode_leptonica_android_ReadFile_nativeReadFile(JNIEnv *env, jclass clazz,
-                                                                   jstring fileName) {
+jlong Java_com_googlecode_leptonica_android_ReadFile_nativeReadFile(JNIEnv *env, jclass clazz,
+                                                                    jstring fileName) {
   PIX *pixd = NULL;
 
   const char *c_fileName = env->GetStringUTFChars(fileName, NULL);
@@ -131,11 +317,11 @@ jint Java_com_googlecode_leptonica_android_ReadFile_nativeReadFile(JNIEnv *env,
 
   env->ReleaseStringUTFChars(fileName, c_fileName);
 
-  return (jint) pixd;
+  return (jlong) pixd;
 }
 
-jint Java_com_googlecode_leptonica_android_ReadFile_nativeReadBitmap(JNIEnv *env, jclass clazz,
-                                                                     jobject bitmap) {
+jlong Java_com_googlecode_leptonica_android_ReadFile_nativeReadBitmap(JNIEnv *env, jclass clazz,
+                                                                      jobject bitmap) {
   l_int32 w, h, d;
   AndroidBitmapInfo info;
   void* pixels;
@@ -146,8 +332,10 @@ jint Java_com_googlecode_leptonica_android_ReadFile_nativeReadBitmap(JNIEnv *env
     return JNI_FALSE;
   }
 
-  if (info.format != ANDROID_BITMAP_FORMAT_RGBA_8888) {
-    LOGE("Bitmap format is not RGBA_8888 !");
+  if (info.format != ANDROID_BITMAP_FORMAT_RGBA_8888
+      && info.format != ANDROID_BITMAP_FORMAT_RGB_565
+      && info.format != ANDROID_BITMAP_FORMAT_A_8) {
+    LOGE("Bitmap format is not RGBA_8888, RGB_565 or A_8 !");
     return JNI_FALSE;
   }
 
@@ -158,35 +346,66 @@ jint Java_com_googlecode_leptonica_android_ReadFile_nativeReadBitmap(JNIEnv *env
 
   PIX *pixd = pixCreate(info.width, info.height, 8);
 
-  l_uint32 *src = (l_uint32 *) pixels;
-  l_int32 srcWpl = (info.stride / 4);
+  if (pixd == NULL) {
+    LOGE("Could not create pix");
+    AndroidBitmap_unlockPixels(env, bitmap);
+    return JNI_FALSE;
+  }
+
   l_uint32 *dst = pixGetData(pixd);
   l_int32 dstWpl = pixGetWpl(pixd);
   l_uint8 a, r, g, b, pixel8;
 
   for (int y = 0; y < info.height; y++) {
     l_uint32 *dst_line = dst + (y * dstWpl);
-    l_uint32 *src_line = src + (y * srcWpl);
-
-    for (int x = 0; x < info.width; x++) {
-      // Get pixel from RGBA_8888
-      r = *src_line >> SK_R32_SHIFT;
-      g = *src_line >> SK_G32_SHIFT;
-      b = *src_line >> SK_B32_SHIFT;
-      a = *src_line >> SK_A32_SHIFT;
-      pixel8 = (l_uint8)((r + g + b) / 3);
-
-      // Set pixel to LUMA_8
-      SET_DATA_BYTE(dst_line, x, pixel8);
-
-      // Move to the next pixel
-      src_line++;
+    l_uint8 *src_row = (l_uint8 *) pixels + (y * info.stride);
+
+    if (info.format == ANDROID_BITMAP_FORMAT_RGBA_8888) {
+      l_uint32 *src_line = (l_uint32 *) src_row;
+
+      for (int x = 0; x < info.width; x++) {
+        // Get pixel from RGBA_8888
+        r = *src_line >> SK_R32_SHIFT;
+        g = *src_line >> SK_G32_SHIFT;
+        b = *src_line >> SK_B32_SHIFT;
+        a = *src_line >> SK_A32_SHIFT;
+        pixel8 = (l_uint8)((r + g + b) / 3);
+
+        // Set pixel to LUMA_8
+        SET_DATA_BYTE(dst_line, x, pixel8);
+
+        // Move to the next pixel
+        src_line++;
+      }
+    } else if (info.format == ANDROID_BITMAP_FORMAT_RGB_565) {
+      l_uint16 *src_line = (l_uint16 *) src_row;
+
+      for (int x = 0; x < info.width; x++) {
+        // Get pixel from RGB_565, widening each channel to 8 bits
+        l_uint16 pixel = *src_line;
+        r = (pixel >> 11) & 0x1F;
+        g = (pixel >> 5) & 0x3F;
+        b = pixel & 0x1F;
+        r = (r << 3) | (r >> 2);
+        g = (g << 2) | (g >> 4);
+        b = (b << 3) | (b >> 2);
+        pixel8 = (l_uint8)((r + g + b) / 3);
+
+        SET_DATA_BYTE(dst_line, x, pixel8);
+
+        src_line++;
+      }
+    } else {
+      // A_8 has a single channel that is taken as the gray value
+      for (int x = 0; x < info.width; x++) {
+        SET_DATA_BYTE(dst_line, x, src_row[x]);
+      }
     }
   }
 
   AndroidBitmap_unlockPixels(env, bitmap);
 
-  return (jint) pixd;
+  return (jlong) pixd;
 }
 
 #ifdef __cplusplus
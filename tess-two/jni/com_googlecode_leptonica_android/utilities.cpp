@@ -27,69 +27,69 @@ extern "C" {
  * AdaptiveMap *
  ***************/
 
-jint Java_com_googlecode_leptonica_android_AdaptiveMap_nativeBackgroundNormMorph(JNIEnv *env,
-                                                                                 jclass clazz,
-                                                                                 jint nativePix,
-                                                                                 jint reduction,
-                                                                                 jint size,
-                                                                                 jint bgval) {
+jlong Java_com_googlecode_leptonica_android_AdaptiveMap_nativeBackgroundNormMorph(JNIEnv *env,
+                                                                                  jclass clazz,
+                                                                                  jlong nativePix,
+                                                                                  jint reduction,
+                                                                                  jint size,
+                                                                                  jint bgval) {
   // Normalizes the background of each element in pixa.
 
   PIX *pixs = (PIX *) nativePix;
   PIX *pixd = pixBackgroundNormMorph(pixs, NULL, (l_int32) reduction, (l_int32) size,
                                      (l_int32) bgval);
 
-  return (jint) pixd;
+  return (jlong) pixd;
 }
 
 /************
  * Binarize *
  ************/
 
-jint Java_com_googlecode_leptonica_android_Binarize_nativeOtsuAdaptiveThreshold(JNIEnv *env,
-                                                                                jclass clazz,
-                                                                                jint nativePix,
-                                                                                jint sizeX,
-                                                                                jint sizeY,
-                                                                                jint smoothX,
-                                                                                jint smoothY,
-                                                                                jfloat scoreFract) {
+jlong Java_com_googlecode_leptonica_android_Binarize_nativeOtsuAdaptiveThreshold(JNIEnv *env,
+                                                                                 jclass clazz,
+                                                                                 jlong nativePix,
+                                                                                 jint sizeX,
+                                                                                 jint sizeY,
+                                                                                 jint smoothX,
+                                                                                 jint smoothY,
+                                                                                 jfloat scoreFract) {
 
   PIX *pixs = (PIX *) nativePix;
   PIX *pixd;
 
   if (pixOtsuAdaptiveThreshold(pixs, (l_int32) sizeX, (l_int32) sizeY, (l_int32) smoothX,
                                (l_int32) smoothY, (l_float32) scoreFract, NULL, &pixd)) {
-    return (jint) 0;
+    return (jlong) 0;
   }
 
-  return (jint) pixd;
+  return (jlong) pixd;
 }
 
 /***********
  * Convert *
  ***********/
 
-jint Java_com_googlecode_leptonica_android_Convert_nativeConvertTo8(JNIEnv *env, jclass clazz,
-                                                                    jint nativePix) {
+jlong Java_com_googlecode_leptonica_android_Convert_nativeConvertTo8(JNIEnv *env, jclass clazz,
+                                                                     jlong nativePix) {
   PIX *pixs = (PIX *) nativePix;
   PIX *pixd = pixConvertTo8(pixs, FALSE);
 
-  return (jint) pixd;
+  return (jlong) pixd;
 }
 
 /***********
  * Enhance *
  ***********/
 
-jint Java_com_googlecode_leptonica_android_Enhance_nativeUnsharpMasking(JNIEnv *env, jclass clazz,
-                                                                        jint nativePix,
-                                                                        jint halfwidth,
-                                                                        jfloat fract) {
+jlong Java_com_googlecode_leptonica_android_Enhance_nativeUnsharpMasking(JNIEnv *env, jclass clazz,
+                                                                         jlong nativePix,
+                                                                         jint halfwidth,
+                                                                         jfloat fract) {
   PIX *pixs = (PIX *) nativePix;
   PIX *pixd = pixUnsharpMasking(pixs, (l_int32) halfwidth, (l_float32) fract);
 
-  return (jint) pixd;
+  return (jlong) pixd;
 }
 
 /**********
@@ -98,7 +98,7 @@ jint Java_com_googlecode_leptonica_android_Enhance_nativeUnsharpMasking(JNIEnv *
 
 jbyteArray Java_com_googlecode_leptonica_android_JpegIO_nativeCompressToJpeg(JNIEnv *env,
                                                                              jclass clazz,
-                                                                             jint nativePix,
+                                                                             jlong nativePix,
                                                                              jint quality,
                                                                              jboolean progressive) {
   PIX *pix = (PIX *) nativePix;
@@ -125,13 +125,13 @@ jbyteArray Java_com_googlecode_leptonica_android_JpegIO_nativeCompressToJpeg(JNI
  * Scale *
  *********/
 
-jint Java_com_googlecode_leptonica_android_Scale_nativeScale(JNIEnv *env, jclass clazz,
-                                                             jint nativePix, jfloat scaleX,
-                                                             jfloat scaleY) {
+jlong Java_com_googlecode_leptonica_android_Scale_nativeScale(JNIEnv *env, jclass clazz,
+                                                              jlong nativePix, jfloat scaleX,
+                                                              jfloat scaleY) {
   PIX *pixs = (PIX *) nativePix;
   PIX *pixd = pixScale(pixs, (l_float32) scaleX, (l_float32) scaleY);
 
-  return (jint) pixd;
+  return (jlong) pixd;
 }
 
 /********
@@ -139,7 +139,7 @@ jint Java_com_googlecode_leptonica_android_Scale_nativeScale(JNIEnv *env, jclass
  ********/
 
 jfloat Java_com_googlecode_leptonica_android_Skew_nativeFindSkew(JNIEnv *env, jclass clazz,
-                                                                 jint nativePix, jfloat sweepRange,
+                                                                 jlong nativePix, jfloat sweepRange,
                                                                  jfloat sweepDelta,
                                                                  jint sweepReduction,
                                                                  jint searchReduction,
@@ -167,9 +167,9 @@ jfloat Java_com_googlecode_leptonica_android_Skew_nativeFindSkew(JNIEnv *env, jc
  * Rotate *
  **********/
 
-jint Java_com_googlecode_leptonica_android_Rotate_nativeRotate(JNIEnv *env, jclass clazz,
-                                                               jint nativePix, jfloat degrees,
-                                                               jboolean quality) {
+jlong Java_com_googlecode_leptonica_android_Rotate_nativeRotate(JNIEnv *env, jclass clazz,
+                                                                jlong nativePix, jfloat degrees,
+                                                                jboolean quality) {
   PIX *pixd;
   PIX *pixs = (PIX *) nativePix;
 
@@ -186,7 +186,15 @@ jint Java_com_googlecode_leptonica_android_Rotate_nativeRotate(JNIEnv *env, jcla
     pixd = pixRotate(pixs, radians, type, L_BRING_IN_WHITE, 0, 0);
   }
 
-  return (jint) pixd;
+  return (jlong) pixd;
+}
+
+jlong Java_com_googlecode_leptonica_android_Rotate_nativeRotateOrth(JNIEnv *env, jclass clazz,
+                                                                    jlong nativePix, jint quads) {
+  PIX *pixs = (PIX *) nativePix;
+  PIX *pixd = pixRotateOrth(pixs, (l_int32) quads);
+
+  return (jlong) pixd;
 }
 
 #ifdef __cplusplus
@@ -244,6 +244,11 @@ bool Tesseract::recog_all_words(PAGE_RES* page_res,
       if (monitor != NULL) {
         monitor->ocr_alive = TRUE;
         monitor->progress = 30 + 50 * word_index / stats_.word_count;
+        if (monitor->progress_callback != NULL) {
+          TBOX box = page_res_it.word()->word->bounding_box();
+          (*monitor->progress_callback)(monitor->cancel_this, monitor->progress,
+                                        box.left(), box.right(), box.top(), box.bottom());
+        }
         if (monitor->deadline_exceeded() ||
             (monitor->cancel != NULL && (*monitor->cancel)(monitor->cancel_this,
                                                            stats_.dict_words)))
@@ -317,6 +322,11 @@ bool Tesseract::recog_all_words(PAGE_RES* page_res,
     if (monitor != NULL) {
       monitor->ocr_alive = TRUE;
       monitor->progress = 80 + 10 * word_index / stats_.word_count;
+      if (monitor->progress_callback != NULL) {
+        TBOX box = page_res_it.word()->word->bounding_box();
+        (*monitor->progress_callback)(monitor->cancel_this, monitor->progress,
+                                      box.left(), box.right(), box.top(), box.bottom());
+      }
       if (monitor->deadline_exceeded() ||
           (monitor->cancel != NULL && (*monitor->cancel)(monitor->cancel_this,
                                                          stats_.dict_words)))
@@ -412,6 +422,8 @@ bool Tesseract::recog_all_words(PAGE_RES* page_res,
 
   if (monitor != NULL) {
     monitor->progress = 100;
+    if (monitor->progress_callback != NULL)
+      (*monitor->progress_callback)(monitor->cancel_this, 100, 0, 0, 0, 0);
   }
   return true;
 }
@@ -108,6 +108,14 @@ typedef struct {                  /*single character */
  * user words found. If it returns true then operation is cancelled.
  **********************************************************************/
 typedef bool (*CANCEL_FUNC)(void* cancel_this, int words);
+/**********************************************************************
+ * If the progress function is not null then it is called whenever the
+ * progress changes during the recognition passes, together with the
+ * bounding box of the word that is about to be recognized (in tesseract
+ * coordinates, bottom-up). At 100 percent the box is empty.
+ **********************************************************************/
+typedef void (*PROGRESS_FUNC)(void* cancel_this, int progress,
+                              int left, int right, int top, int bottom);
 
 class ETEXT_DESC {             // output header
  public:
@@ -117,13 +125,15 @@ class ETEXT_DESC {             // output header
   volatile inT8 ocr_alive;     // ocr sets to 1, HP 0
   inT8 err_code;               // for errcode use
   CANCEL_FUNC cancel;          // returns true to cancel
+  PROGRESS_FUNC progress_callback;  // called when progress is updated
   void* cancel_this;           // this or other data for cancel
   struct timeval end_time;     // time to stop. expected to be set only by call
                                // to set_deadline_msecs()
   EANYCODE_CHAR text[1];       // character data
 
   ETEXT_DESC() : count(0), progress(0), more_to_come(0), ocr_alive(0),
-                   err_code(0), cancel(NULL), cancel_this(NULL) {
+                   err_code(0), cancel(NULL), progress_callback(NULL),
+                   cancel_this(NULL) {
     end_time.tv_sec = 0;
     end_time.tv_usec = 0;
   }
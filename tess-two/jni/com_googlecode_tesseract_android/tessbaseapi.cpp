@@ -17,28 +17,106 @@
 
 #include <stdio.h>
 #include <malloc.h>
+#include <string.h>
 #include "android/bitmap.h"
 #include "common.h"
 #include "baseapi.h"
+#include "ocrclass.h"
+#include "resultiterator.h"
+#include "ltrresultiterator.h"
+#include "genericvector.h"
 #include "allheaders.h"
 
 static jfieldID field_mNativeData;
+static jmethodID method_onProgressValues;
+static jclass class_WordResults;
+static jmethodID method_WordResults_init;
+static jclass class_SymbolChoices;
+static jmethodID method_SymbolChoices_init;
 
 struct native_data_t {
   tesseract::TessBaseAPI api;
   PIX *pix;
   void *data;
   bool debug;
+  volatile bool cancel; // set by nativeStop(), may be called from any thread
+  int image_height;
+  int rect_left; // the rectangle that is recognized, for the progress boxes
+  int rect_top;
+  int rect_height;
 
   native_data_t() {
     pix = NULL;
     data = NULL;
     debug = false;
+    cancel = false;
+    image_height = 0;
+    rect_left = 0;
+    rect_top = 0;
+    rect_height = 0;
   }
+
+  void set_image_height(int height) {
+    image_height = height;
+    rect_left = 0;
+    rect_top = 0;
+    rect_height = height;
+  }
+};
+
+/**
+ * What the monitor callbacks need to know about the running recognition.
+ */
+struct monitor_data_t {
+  native_data_t *nat;
+  JNIEnv *env;
+  jobject object; // NULL if nobody listens to the progress
 };
 
+/**
+ * Cancel function of the recognition monitor. Tesseract calls it once per
+ * word.
+ */
+static bool cancel_func(void* cancel_data, int words) {
+  monitor_data_t *data = (monitor_data_t *) cancel_data;
+
+  return data->nat->cancel;
+}
+
+/**
+ * Progress function of the recognition monitor. Passes the progress and the
+ * word box on to TessBaseAPI.onProgressValues() as plain ints, so nothing is
+ * allocated per call.
+ */
+static void progress_func(void* cancel_data, int progress, int left, int right, int top,
+                          int bottom) {
+  monitor_data_t *data = (monitor_data_t *) cancel_data;
+  native_data_t *nat = data->nat;
+
+  if (data->object == NULL || data->env->ExceptionCheck())
+    return;
+
+  if (left == right && top == bottom) {
+    left = right = top = bottom = 0;
+  } else {
+    // Tesseract counts from the bottom of the rectangle, Java from the top of the image
+    left += nat->rect_left;
+    right += nat->rect_left;
+    int image_top = nat->rect_top + nat->rect_height - top;
+    bottom = nat->rect_top + nat->rect_height - bottom;
+    top = image_top;
+  }
+
+  data->env->CallVoidMethod(data->object, method_onProgressValues, (jint) progress,
+                            (jint) left, (jint) top, (jint) right, (jint) bottom);
+
+  // Stop at the next word if the listener threw, the exception is thrown in Java afterwards
+  if (data->env->ExceptionCheck())
+    nat->cancel = true;
+}
+
 static inline native_data_t * get_native_data(JNIEnv *env, jobject object) {
-  return (native_data_t *) (env->GetIntField(object, field_mNativeData));
+  return (native_data_t *) (env->GetLongField(object, field_mNativeData));
 }
 
 #ifdef __cplusplus
@@ -59,7 +137,20 @@ jint JNI_OnLoad(JavaVM* vm, void* reserved) {
 void Java_com_googlecode_tesseract_android_TessBaseAPI_nativeClassInit(JNIEnv* env, 
                                                                        jclass clazz) {
 
-  field_mNativeData = env->GetFieldID(clazz, "mNativeData", "I");
+  field_mNativeData = env->GetFieldID(clazz, "mNativeData", "J");
+  method_onProgressValues = env->GetMethodID(clazz, "onProgressValues", "(IIIII)V");
+
+  jclass wordResults = env->FindClass("com/googlecode/tesseract/android/WordResults");
+  class_WordResults = (jclass) env->NewGlobalRef(wordResults);
+  method_WordResults_init = env->GetMethodID(wordResults, "<init>",
+                                             "(Ljava/lang/String;[I[I[F)V");
+  env->DeleteLocalRef(wordResults);
+
+  jclass symbolChoices = env->FindClass("com/googlecode/tesseract/android/SymbolChoices");
+  class_SymbolChoices = (jclass) env->NewGlobalRef(symbolChoices);
+  method_SymbolChoices_init = env->GetMethodID(symbolChoices, "<init>",
+                                               "(Ljava/lang/String;[I[F[I[I)V");
+  env->DeleteLocalRef(symbolChoices);
 }
 
 void Java_com_googlecode_tesseract_android_TessBaseAPI_nativeConstruct(JNIEnv* env,
@@ -72,7 +163,7 @@ void Java_com_googlecode_tesseract_android_TessBaseAPI_nativeConstruct(JNIEnv* e
     return;
   }
 
-  env->SetIntField(object, field_mNativeData, (jint) nat);
+  env->SetLongField(object, field_mNativeData, (jlong) nat);
 }
 
 void Java_com_googlecode_tesseract_android_TessBaseAPI_nativeFinalize(JNIEnv* env,
@@ -145,6 +236,72 @@ jboolean Java_com_googlecode_tesseract_android_TessBaseAPI_nativeInitOem(JNIEnv
   return res;
 }
 
+jboolean Java_com_googlecode_tesseract_android_TessBaseAPI_nativeInitParams(JNIEnv *env,
+                                                                            jobject thiz,
+                                                                            jstring dir,
+                                                                            jstring lang,
+                                                                            jint mode,
+                                                                            jobjectArray configs,
+                                                                            jobjectArray names,
+                                                                            jobjectArray values) {
+
+  native_data_t *nat = get_native_data(env, thiz);
+
+  const char *c_dir = env->GetStringUTFChars(dir, NULL);
+  const char *c_lang = env->GetStringUTFChars(lang, NULL);
+
+  // Config file names, passed to Init() as plain C strings
+  int configs_size = configs == NULL ? 0 : env->GetArrayLength(configs);
+  char **c_configs = configs_size > 0 ? new char*[configs_size] : NULL;
+
+  for (int i = 0; i < configs_size; i++) {
+    jstring config = (jstring) env->GetObjectArrayElement(configs, i);
+    const char *c_config = env->GetStringUTFChars(config, NULL);
+    c_configs[i] = strdup(c_config);
+    env->ReleaseStringUTFChars(config, c_config);
+    env->DeleteLocalRef(config);
+  }
+
+  // Variables that have to be set before the language data is loaded
+  GenericVector<STRING> vars_vec;
+  GenericVector<STRING> vars_values;
+  int vars_size = names == NULL ? 0 : env->GetArrayLength(names);
+
+  for (int i = 0; i < vars_size; i++) {
+    jstring name = (jstring) env->GetObjectArrayElement(names, i);
+    jstring value = (jstring) env->GetObjectArrayElement(values, i);
+    const char *c_name = env->GetStringUTFChars(name, NULL);
+    const char *c_value = env->GetStringUTFChars(value, NULL);
+    vars_vec.push_back(STRING(c_name));
+    vars_values.push_back(STRING(c_value));
+    env->ReleaseStringUTFChars(name, c_name);
+    env->ReleaseStringUTFChars(value, c_value);
+    env->DeleteLocalRef(name);
+    env->DeleteLocalRef(value);
+  }
+
+  jboolean res = JNI_TRUE;
+
+  if (nat->api.Init(c_dir, c_lang, (tesseract::OcrEngineMode) mode, c_configs, configs_size,
+                    &vars_vec, &vars_values, false)) {
+    LOGE("Could not initialize Tesseract API with language=%s!", c_lang);
+    res = JNI_FALSE;
+  } else {
+    LOGI("Initialized Tesseract API with language=%s, %d configs, %d variables", c_lang,
+         configs_size, vars_size);
+  }
+
+  for (int i = 0; i < configs_size; i++) {
+    free(c_configs[i]);
+  }
+  delete[] c_configs;
+
+  env->ReleaseStringUTFChars(dir, c_dir);
+  env->ReleaseStringUTFChars(lang, c_lang);
+
+  return res;
+}
+
 jstring Java_com_googlecode_tesseract_android_TessBaseAPI_nativeGetInitLanguagesAsString(JNIEnv *env,
                                                                                          jobject thiz) {
 
@@ -166,20 +323,27 @@ void Java_com_googlecode_tesseract_android_TessBaseAPI_nativeSetImageBytes(JNIEn
                                                                            jint bpp,
                                                                            jint bpl) {
 
-  jbyte *data_array = env->GetByteArrayElements(data, NULL);
-  int count = env->GetArrayLength(data);
+  // Only copy the part of the array that makes up the image, e.g. the
+  // luminance plane of a NV21 camera frame.
+  int count = (int) bpl * (int) height;
   unsigned char* imagedata = (unsigned char *) malloc(count * sizeof(unsigned char));
 
-  // This is painfully slow, but necessary because we don't know
-  // how many bits the JVM might be using to represent a byte
-  for (int i = 0; i < count; i++) {
-    imagedata[i] = (unsigned char) data_array[i];
+  if (imagedata == NULL) {
+    LOGE("Could not allocate %d bytes for the image", count);
+    return;
   }
 
-  env->ReleaseByteArrayElements(data, data_array, JNI_ABORT);
+  env->GetByteArrayRegion(data, 0, count, (jbyte *) imagedata);
+
+  if (env->ExceptionCheck()) {
+    // The array is shorter than bpl * height, leave the exception pending
+    free(imagedata);
+    return;
+  }
 
   native_data_t *nat = get_native_data(env, thiz);
   nat->api.SetImage(imagedata, (int) width, (int) height, (int) bpp, (int) bpl);
+  nat->set_image_height((int) height);
 
   // Since Tesseract doesn't take ownership of the memory, we keep a pointer in the native
   // code struct. We need to free that pointer when we release our instance of Tesseract or
@@ -194,13 +358,14 @@ void Java_com_googlecode_tesseract_android_TessBaseAPI_nativeSetImageBytes(JNIEn
 
 void Java_com_googlecode_tesseract_android_TessBaseAPI_nativeSetImagePix(JNIEnv *env,
                                                                          jobject thiz,
-                                                                         jint nativePix) {
+                                                                         jlong nativePix) {
 
   PIX *pixs = (PIX *) nativePix;
   PIX *pixd = pixClone(pixs);
 
   native_data_t *nat = get_native_data(env, thiz);
   nat->api.SetImage(pixd);
+  nat->set_image_height(pixGetHeight(pixd));
 
   // Since Tesseract doesn't take ownership of the memory, we keep a pointer in the native
   // code struct. We need to free that pointer when we release our instance of Tesseract or
@@ -223,6 +388,12 @@ void Java_com_googlecode_tesseract_android_TessBaseAPI_nativeSetRectangle(JNIEnv
   native_data_t *nat = get_native_data(env, thiz);
 
   nat->api.SetRectangle(left, top, width, height);
+
+  // Clipped to the image like the thresholder does
+  int bottom = top + height < nat->image_height ? top + height : nat->image_height;
+  nat->rect_left = left > 0 ? left : 0;
+  nat->rect_top = top > 0 ? top : 0;
+  nat->rect_height = bottom - nat->rect_top;
 }
 
 jstring Java_com_googlecode_tesseract_android_TessBaseAPI_nativeGetUTF8Text(JNIEnv *env,
@@ -239,12 +410,54 @@ jstring Java_com_googlecode_tesseract_android_TessBaseAPI_nativeGetUTF8Text(JNIE
   return result;
 }
 
+jstring Java_com_googlecode_tesseract_android_TessBaseAPI_nativeGetUTF8TextMonitored(JNIEnv *env,
+                                                                                     jobject thiz,
+                                                                                     jint timeout,
+                                                                                     jboolean progress) {
+
+  native_data_t *nat = get_native_data(env, thiz);
+
+  monitor_data_t data;
+  data.nat = nat;
+  data.env = env;
+  data.object = progress == JNI_TRUE ? thiz : NULL;
+
+  ETEXT_DESC monitor;
+  monitor.cancel = cancel_func;
+  monitor.progress_callback = progress_func;
+  monitor.cancel_this = &data;
+  if (timeout > 0)
+    monitor.set_deadline_msecs(timeout);
+
+  // Fails if cancelled, the deadline has passed or there is no image
+  int res = nat->api.Recognize(&monitor);
+  nat->cancel = false;
+
+  if (res < 0 || env->ExceptionCheck()) {
+    // Don't leave the partial results around for the next GetUTF8Text()
+    nat->api.Clear();
+    return NULL;
+  }
+
+  char *text = nat->api.GetUTF8Text();
+
+  if (text == NULL)
+    return NULL;
+
+  jstring result = env->NewStringUTF(text);
+
+  delete[] text;
+
+  return result;
+}
+
 void Java_com_googlecode_tesseract_android_TessBaseAPI_nativeStop(JNIEnv *env, 
                                                                   jobject thiz) {
 
   native_data_t *nat = get_native_data(env, thiz);
 
-  // TODO How do we stop without a monitor?!
+  // Picked up by cancel_func() during the next monitored recognition
+  nat->cancel = true;
 }
 
 jint Java_com_googlecode_tesseract_android_TessBaseAPI_nativeMeanConfidence(JNIEnv *env,
@@ -284,6 +497,193 @@ jintArray Java_com_googlecode_tesseract_android_TessBaseAPI_nativeWordConfidence
   return ret;
 }
 
+/**
+ * Number of UTF-16 code units (Java chars) of a UTF-8 string.
+ */
+static int utf16_length(const char *utf8) {
+  int length = 0;
+
+  for (const unsigned char *c = (const unsigned char *) utf8; *c != 0; c++) {
+    if ((*c & 0xC0) != 0x80)
+      length += *c >= 0xF0 ? 2 : 1; // 4 byte sequences need a surrogate pair
+  }
+
+  return length;
+}
+
+jobject Java_com_googlecode_tesseract_android_TessBaseAPI_nativeGetWordResults(JNIEnv *env,
+                                                                              jobject thiz) {
+
+  native_data_t *nat = get_native_data(env, thiz);
+
+  tesseract::ResultIterator *it = nat->api.GetIterator();
+
+  if (it == NULL) {
+    // Not recognized yet
+    if (nat->api.Recognize(NULL) < 0)
+      return NULL;
+
+    it = nat->api.GetIterator();
+
+    if (it == NULL)
+      return NULL;
+  }
+
+  // Words separated by spaces, the offsets point to the start of each word
+  STRING text;
+  GenericVector<int> offsets;
+  GenericVector<int> boxes;
+  GenericVector<float> confidences;
+  int length = 0;
+
+  do {
+    if (it->Empty(tesseract::RIL_WORD))
+      continue;
+
+    char *word = it->GetUTF8Text(tesseract::RIL_WORD);
+    int left, top, right, bottom;
+
+    if (word == NULL || !it->BoundingBox(tesseract::RIL_WORD, &left, &top, &right, &bottom)) {
+      delete[] word;
+      continue;
+    }
+
+    if (offsets.size() > 0) {
+      text += " ";
+      length++;
+    }
+
+    offsets.push_back(length);
+    text += word;
+    length += utf16_length(word);
+
+    boxes.push_back(left);
+    boxes.push_back(top);
+    boxes.push_back(right);
+    boxes.push_back(bottom);
+    confidences.push_back(it->Confidence(tesseract::RIL_WORD));
+
+    delete[] word;
+  } while (it->Next(tesseract::RIL_WORD));
+
+  delete it;
+
+  int count = offsets.size();
+  offsets.push_back(length + 1); // end of the last word plus the separator
+
+  jstring jtext = env->NewStringUTF(text.string());
+  jintArray joffsets = env->NewIntArray(count + 1);
+  jintArray jboxes = env->NewIntArray(count * 4);
+  jfloatArray jconfidences = env->NewFloatArray(count);
+
+  if (jtext == NULL || joffsets == NULL || jboxes == NULL || jconfidences == NULL)
+    return NULL; // OutOfMemoryError is pending
+
+  env->SetIntArrayRegion(joffsets, 0, count + 1, &offsets[0]);
+
+  if (count > 0) {
+    env->SetIntArrayRegion(jboxes, 0, count * 4, &boxes[0]);
+    env->SetFloatArrayRegion(jconfidences, 0, count, &confidences[0]);
+  }
+
+  return env->NewObject(class_WordResults, method_WordResults_init, jtext, joffsets, jboxes,
+                        jconfidences);
+}
+
+static jintArray new_int_array(JNIEnv *env, GenericVector<int> &values) {
+  jintArray array = env->NewIntArray(values.size());
+
+  if (array != NULL && values.size() > 0)
+    env->SetIntArrayRegion(array, 0, values.size(), &values[0]);
+
+  return array;
+}
+
+jobject Java_com_googlecode_tesseract_android_TessBaseAPI_nativeGetSymbolChoices(JNIEnv *env,
+                                                                                jobject thiz) {
+
+  native_data_t *nat = get_native_data(env, thiz);
+
+  tesseract::ResultIterator *it = nat->api.GetIterator();
+
+  if (it == NULL) {
+    // Not recognized yet
+    if (nat->api.Recognize(NULL) < 0)
+      return NULL;
+
+    it = nat->api.GetIterator();
+
+    if (it == NULL)
+      return NULL;
+  }
+
+  // All candidates are concatenated in text, the offsets point to the start of each one.
+  // Symbols are ranges of candidates, words are ranges of symbols.
+  STRING text;
+  GenericVector<int> offsets;
+  GenericVector<float> confidences;
+  GenericVector<int> symbol_starts;
+  GenericVector<int> word_starts;
+  int length = 0;
+
+  do {
+    if (it->Empty(tesseract::RIL_SYMBOL))
+      continue;
+
+    if (word_starts.size() == 0 || it->IsAtBeginningOf(tesseract::RIL_WORD))
+      word_starts.push_back(symbol_starts.size());
+
+    symbol_starts.push_back(offsets.size());
+
+    tesseract::ChoiceIterator choices(*it);
+
+    if (choices.GetUTF8Text() != NULL) {
+      do {
+        const char *choice = choices.GetUTF8Text();
+
+        offsets.push_back(length);
+        text += choice;
+        length += utf16_length(choice);
+        confidences.push_back(choices.Confidence());
+      } while (choices.Next());
+    } else {
+      // No blob choices saved, the best choice is the only candidate
+      char *symbol = it->GetUTF8Text(tesseract::RIL_SYMBOL);
+
+      offsets.push_back(length);
+      if (symbol != NULL) {
+        text += symbol;
+        length += utf16_length(symbol);
+      }
+      confidences.push_back(it->Confidence(tesseract::RIL_SYMBOL));
+
+      delete[] symbol;
+    }
+  } while (it->Next(tesseract::RIL_SYMBOL));
+
+  delete it;
+
+  offsets.push_back(length);
+  symbol_starts.push_back(confidences.size());
+  word_starts.push_back(symbol_starts.size() - 1);
+
+  jstring jtext = env->NewStringUTF(text.string());
+  jintArray joffsets = new_int_array(env, offsets);
+  jfloatArray jconfidences = env->NewFloatArray(confidences.size());
+  jintArray jsymbol_starts = new_int_array(env, symbol_starts);
+  jintArray jword_starts = new_int_array(env, word_starts);
+
+  if (jtext == NULL || joffsets == NULL || jconfidences == NULL || jsymbol_starts == NULL
+      || jword_starts == NULL)
+    return NULL; // OutOfMemoryError is pending
+
+  if (confidences.size() > 0)
+    env->SetFloatArrayRegion(jconfidences, 0, confidences.size(), &confidences[0]);
+
+  return env->NewObject(class_SymbolChoices, method_SymbolChoices_init, jtext, joffsets,
+                        jconfidences, jsymbol_starts, jword_starts);
+}
+
 jboolean Java_com_googlecode_tesseract_android_TessBaseAPI_nativeSetVariable(JNIEnv *env,
                                                                              jobject thiz,
                                                                              jstring var,
@@ -308,6 +708,7 @@ void Java_com_googlecode_tesseract_android_TessBaseAPI_nativeClear(JNIEnv *env,
   native_data_t *nat = get_native_data(env, thiz);
 
   nat->api.Clear();
+  nat->cancel = false;
 
   // Call between pages or documents etc to free up memory and forget adaptive data.
   nat->api.ClearAdaptiveClassifier();
@@ -359,8 +760,8 @@ void Java_com_googlecode_tesseract_android_TessBaseAPI_nativeSetPageSegMode(JNIE
   nat->api.SetPageSegMode((tesseract::PageSegMode) mode);
 }
 
-jint Java_com_googlecode_tesseract_android_TessBaseAPI_nativeGetRegions(JNIEnv *env,
-                                                                        jobject thiz) {
+jlong Java_com_googlecode_tesseract_android_TessBaseAPI_nativeGetRegions(JNIEnv *env,
+                                                                         jobject thiz) {
 
   native_data_t *nat = get_native_data(env, thiz);;
   PIXA *pixa = NULL;
@@ -370,11 +771,11 @@ jint Java_com_googlecode_tesseract_android_TessBaseAPI_nativeGetRegions(JNIEnv *
 
   boxaDestroy(&boxa);
 
-  return reinterpret_cast<jint>(pixa);
+  return reinterpret_cast<jlong>(pixa);
 }
 
-jint Java_com_googlecode_tesseract_android_TessBaseAPI_nativeGetTextlines(JNIEnv *env,
-                                                                          jobject thiz) {
+jlong Java_com_googlecode_tesseract_android_TessBaseAPI_nativeGetTextlines(JNIEnv *env,
+                                                                           jobject thiz) {
 
   native_data_t *nat = get_native_data(env, thiz);;
   PIXA *pixa = NULL;
@@ -384,11 +785,11 @@ jint Java_com_googlecode_tesseract_android_TessBaseAPI_nativeGetTextlines(JNIEnv
 
   boxaDestroy(&boxa);
 
-  return reinterpret_cast<jint>(pixa);
+  return reinterpret_cast<jlong>(pixa);
 }
 
-jint Java_com_googlecode_tesseract_android_TessBaseAPI_nativeGetStrips(JNIEnv *env,
-                                                                       jobject thiz) {
+jlong Java_com_googlecode_tesseract_android_TessBaseAPI_nativeGetStrips(JNIEnv *env,
+                                                                        jobject thiz) {
 
   native_data_t *nat = get_native_data(env, thiz);;
   PIXA *pixa = NULL;
@@ -398,11 +799,11 @@ jint Java_com_googlecode_tesseract_android_TessBaseAPI_nativeGetStrips(JNIEnv *e
 
   boxaDestroy(&boxa);
 
-  return reinterpret_cast<jint>(pixa);
+  return reinterpret_cast<jlong>(pixa);
 }
 
-jint Java_com_googlecode_tesseract_android_TessBaseAPI_nativeGetWords(JNIEnv *env,
-                                                                      jobject thiz) {
+jlong Java_com_googlecode_tesseract_android_TessBaseAPI_nativeGetWords(JNIEnv *env,
+                                                                       jobject thiz) {
 
   native_data_t *nat = get_native_data(env, thiz);;
   PIXA *pixa = NULL;
@@ -412,14 +813,14 @@ jint Java_com_googlecode_tesseract_android_TessBaseAPI_nativeGetWords(JNIEnv *en
 
   boxaDestroy(&boxa);
 
-  return reinterpret_cast<jint>(pixa);
+  return reinterpret_cast<jlong>(pixa);
 }
 
-jint Java_com_googlecode_tesseract_android_TessBaseAPI_nativeGetCharacters(JNIEnv *env,
-                                                                           jobject thiz) {
+jlong Java_com_googlecode_tesseract_android_TessBaseAPI_nativeGetCharacters(JNIEnv *env,
+                                                                            jobject thiz) {
 
   native_data_t *nat = get_native_data(env, thiz);
-  return reinterpret_cast<jint>(nat->api.GetCharacters());
+  return reinterpret_cast<jlong>(nat->api.GetCharacters());
 }
 
 #ifdef __cplusplus
@@ -29,13 +29,13 @@ public class AdaptiveMap {
     // Background normalization constants
 
     /** Image reduction value; possible values are 1, 2, 4, 8 */
-    private final static int NORM_REDUCTION = 16;
+    public final static int NORM_REDUCTION = 16;
 
     /** Desired tile size; actual size may vary */
-    private final static int NORM_SIZE = 3;
+    public final static int NORM_SIZE = 3;
 
     /** Background brightness value; values over 200 may result in clipping */
-    private final static int NORM_BG_VALUE = 200;
+    public final static int NORM_BG_VALUE = 200;
 
     /**
      * Normalizes an image's background using default parameters.
@@ -88,7 +88,7 @@ public class AdaptiveMap {
         if (pixs == null)
             throw new IllegalArgumentException("Source pix must be non-null");
 
-        int nativePix = nativeBackgroundNormMorph(
+        long nativePix = nativeBackgroundNormMorph(
                 pixs.mNativePix, normReduction, normSize, normBgValue);
 
         if (nativePix == 0)
@@ -97,10 +97,40 @@ public class AdaptiveMap {
         return new Pix(nativePix);
     }
 
+    /**
+     * Same as {@link #backgroundNormMorph(Pix, int, int, int)}, but writes the
+     * result into an existing Pix instead of returning a new one.
+     *
+     * @param pixs A source pix image.
+     * @param normReduction Reduction at which morphological closings are done.
+     * @param normSize Size of square Sel for the closing.
+     * @param normBgValue Target background value.
+     * @param pixd The destination pix. Its image is replaced by the result
+     *            and it may be the source pix itself.
+     * @return pixd
+     */
+    public static Pix backgroundNormMorph(
+            Pix pixs, int normReduction, int normSize, int normBgValue, Pix pixd) {
+        if (pixs == null)
+            throw new IllegalArgumentException("Source pix must be non-null");
+        if (pixd == null)
+            throw new IllegalArgumentException("Destination pix must be non-null");
+
+        long nativePix = nativeBackgroundNormMorph(
+                pixs.mNativePix, normReduction, normSize, normBgValue);
+
+        if (nativePix == 0)
+            throw new RuntimeException("Failed to normalize image background");
+
+        pixd.replaceData(nativePix);
+
+        return pixd;
+    }
+
     // ***************
     // * NATIVE CODE *
     // ***************
 
-    private static native int nativeBackgroundNormMorph(
-            int nativePix, int reduction, int size, int bgval);
+    private static native long nativeBackgroundNormMorph(
+            long nativePix, int reduction, int size, int bgval);
 }
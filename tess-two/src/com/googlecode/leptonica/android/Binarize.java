@@ -111,7 +111,7 @@ public class Binarize {
         if (pixs.getDepth() != 8)
             throw new IllegalArgumentException("Source pix depth must be 8bpp");
 
-        int nativePix = nativeOtsuAdaptiveThreshold(
+        long nativePix = nativeOtsuAdaptiveThreshold(
                 pixs.mNativePix, sizeX, sizeY, smoothX, smoothY, scoreFraction);
 
         if (nativePix == 0)
@@ -120,10 +120,48 @@ public class Binarize {
         return new Pix(nativePix);
     }
 
+    /**
+     * Same as {@link #otsuAdaptiveThreshold(Pix, int, int, int, int, float)},
+     * but writes the result into an existing Pix instead of returning a new
+     * one.
+     *
+     * @param pixs An 8 bpp PIX source image.
+     * @param sizeX Desired tile X dimension; actual size may vary.
+     * @param sizeY Desired tile Y dimension; actual size may vary.
+     * @param smoothX Half-width of convolution kernel applied to threshold
+     *            array: use 0 for no smoothing.
+     * @param smoothY Half-height of convolution kernel applied to threshold
+     *            array: use 0 for no smoothing.
+     * @param scoreFraction Fraction of the max Otsu score; typ. 0.1 (use 0.0
+     *            for standard Otsu).
+     * @param pixd The destination pix. Its image is replaced by the result
+     *            and it may be the source pix itself.
+     * @return pixd, now a 1 bpp thresholded image
+     */
+    public static Pix otsuAdaptiveThreshold(Pix pixs, int sizeX, int sizeY, int smoothX,
+            int smoothY, float scoreFraction, Pix pixd) {
+        if (pixs == null)
+            throw new IllegalArgumentException("Source pix must be non-null");
+        if (pixd == null)
+            throw new IllegalArgumentException("Destination pix must be non-null");
+        if (pixs.getDepth() != 8)
+            throw new IllegalArgumentException("Source pix depth must be 8bpp");
+
+        long nativePix = nativeOtsuAdaptiveThreshold(
+                pixs.mNativePix, sizeX, sizeY, smoothX, smoothY, scoreFraction);
+
+        if (nativePix == 0)
+            throw new RuntimeException("Failed to perform Otsu adaptive threshold on image");
+
+        pixd.replaceData(nativePix);
+
+        return pixd;
+    }
+
     // ***************
     // * NATIVE CODE *
     // ***************
 
-    private static native int nativeOtsuAdaptiveThreshold(
-            int nativePix, int sizeX, int sizeY, int smoothX, int smoothY, float scoreFract);
+    private static native long nativeOtsuAdaptiveThreshold(
+            long nativePix, int sizeX, int sizeY, int smoothX, int smoothY, float scoreFract);
 }
@@ -16,12 +16,14 @@
 
 package com.googlecode.leptonica.android;
 
+import java.io.Closeable;
+
 /**
  * Wrapper for Leptonica's native BOX.
  *
  * @author alanv@google.com (Alan Viverette)
  */
-public class Box {
+public class Box implements Closeable {
     static {
         System.loadLibrary("lept");
     }
@@ -42,7 +44,7 @@ public class Box {
      * A pointer to the native Box object. This is used internally by native
      * code.
      */
-    final int mNativeBox;
+    final long mNativeBox;
 
     private boolean mRecycled = false;
 
@@ -51,7 +53,7 @@ public class Box {
      *
      * @param nativeBox A pointer to the native BOX.
      */
-    Box(int nativeBox) {
+    Box(long nativeBox) {
         mNativeBox = nativeBox;
         mRecycled = false;
     }
@@ -70,7 +72,7 @@ public class Box {
             throw new IllegalArgumentException("All box dimensions must be non-negative");
         }
         
-        int nativeBox = nativeCreate(x, y, w, h);
+        long nativeBox = nativeCreate(x, y, w, h);
 
         if (nativeBox == 0) {
             throw new OutOfMemoryError();
@@ -150,7 +152,7 @@ public class Box {
     /**
      * Releases resources and frees any memory associated with this Box.
      */
-    public void recycle() {
+    public synchronized void recycle() {
         if (!mRecycled) {
             nativeDestroy(mNativeBox);
 
@@ -158,6 +160,13 @@ public class Box {
         }
     }
 
+    /**
+     * Same as {@link #recycle()}.
+     */
+    public void close() {
+        recycle();
+    }
+
     @Override
     protected void finalize() throws Throwable {
         recycle();
@@ -169,11 +178,11 @@ public class Box {
     // * NATIVE CODE *
     // ***************
 
-    private static native int nativeCreate(int x, int y, int w, int h);
-    private static native int nativeGetX(int nativeBox);
-    private static native int nativeGetY(int nativeBox);
-    private static native int nativeGetWidth(int nativeBox);
-    private static native int nativeGetHeight(int nativeBox);
-    private static native void nativeDestroy(int nativeBox);
-    private static native boolean nativeGetGeometry(int nativeBox, int[] geometry);
+    private static native long nativeCreate(int x, int y, int w, int h);
+    private static native int nativeGetX(long nativeBox);
+    private static native int nativeGetY(long nativeBox);
+    private static native int nativeGetWidth(long nativeBox);
+    private static native int nativeGetHeight(long nativeBox);
+    private static native void nativeDestroy(long nativeBox);
+    private static native boolean nativeGetGeometry(long nativeBox, int[] geometry);
 }
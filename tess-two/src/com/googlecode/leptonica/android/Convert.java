@@ -36,7 +36,7 @@ public class Convert {
         if (pixs == null)
             throw new IllegalArgumentException("Source pix must be non-null");
 
-        int nativePix = nativeConvertTo8(pixs.mNativePix);
+        long nativePix = nativeConvertTo8(pixs.mNativePix);
 
         if (nativePix == 0)
             throw new RuntimeException("Failed to natively convert pix");
@@ -44,9 +44,34 @@ public class Convert {
         return new Pix(nativePix);
     }
 
+    /**
+     * Same as {@link #convertTo8(Pix)}, but writes the result into an existing
+     * Pix instead of returning a new one.
+     *
+     * @param pixs Source pix of any bit-depth.
+     * @param pixd The destination pix. Its image is replaced by the result
+     *            and it may be the source pix itself.
+     * @return pixd, now an 8 bpp image
+     */
+    public static Pix convertTo8(Pix pixs, Pix pixd) {
+        if (pixs == null)
+            throw new IllegalArgumentException("Source pix must be non-null");
+        if (pixd == null)
+            throw new IllegalArgumentException("Destination pix must be non-null");
+
+        long nativePix = nativeConvertTo8(pixs.mNativePix);
+
+        if (nativePix == 0)
+            throw new RuntimeException("Failed to natively convert pix");
+
+        pixd.replaceData(nativePix);
+
+        return pixd;
+    }
+
     // ***************
     // * NATIVE CODE *
     // ***************
 
-    private static native int nativeConvertTo8(int nativePix);
+    private static native long nativeConvertTo8(long nativePix);
 }
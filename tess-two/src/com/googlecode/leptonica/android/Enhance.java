@@ -47,7 +47,7 @@ public class Enhance {
         if (pixs == null)
             throw new IllegalArgumentException("Source pix must be non-null");
 
-        int nativePix = nativeUnsharpMasking(pixs.mNativePix, halfwidth, fraction);
+        long nativePix = nativeUnsharpMasking(pixs.mNativePix, halfwidth, fraction);
 
         if (nativePix == 0) {
             throw new OutOfMemoryError();
@@ -56,9 +56,38 @@ public class Enhance {
         return new Pix(nativePix);
     }
 
+    /**
+     * Same as {@link #unsharpMasking(Pix, int, float)}, but writes the result
+     * into an existing Pix instead of returning a new one.
+     *
+     * @param pixs The source pix.
+     * @param halfwidth The half-width of the smoothing filter.
+     * @param fraction The fraction of edge to be added back into the source
+     *            image.
+     * @param pixd The destination pix. Its image is replaced by the result
+     *            and it may be the source pix itself.
+     * @return pixd
+     */
+    public static Pix unsharpMasking(Pix pixs, int halfwidth, float fraction, Pix pixd) {
+        if (pixs == null)
+            throw new IllegalArgumentException("Source pix must be non-null");
+        if (pixd == null)
+            throw new IllegalArgumentException("Destination pix must be non-null");
+
+        long nativePix = nativeUnsharpMasking(pixs.mNativePix, halfwidth, fraction);
+
+        if (nativePix == 0) {
+            throw new OutOfMemoryError();
+        }
+
+        pixd.replaceData(nativePix);
+
+        return pixd;
+    }
+
     // ***************
     // * NATIVE CODE *
     // ***************
 
-    private static native int nativeUnsharpMasking(int nativePix, int halfwidth, float fract);
+    private static native long nativeUnsharpMasking(long nativePix, int halfwidth, float fract);
 }
@@ -0,0 +1,279 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.googlecode.leptonica.android;
+
+/**
+ * A chain of image processing operations that runs in a single native call.
+ * <p>
+ * Calling the single wrappers (Convert, AdaptiveMap, Binarize, ...) one after
+ * another crosses JNI and creates a Java Pix for every intermediate image. A
+ * Pipeline runs the same operations natively: only the current intermediate
+ * image is kept and it is destroyed as soon as the next operation has produced
+ * its result. Operations that would not change the image (converting an 8 bpp
+ * image to 8 bpp, scaling by 1, rotating by 0 degrees, a skew that can't be
+ * detected) are skipped without allocating anything.
+ * <p>
+ * Pipelines are immutable and can be shared between threads.
+ *
+ * <pre>
+ * Pipeline pipeline = new Pipeline.Builder()
+ *         .convertTo8()
+ *         .backgroundNormMorph()
+ *         .otsuAdaptiveThreshold()
+ *         .deskew()
+ *         .build();
+ *
+ * Pix binary = pipeline.execute(pixs);
+ * </pre>
+ */
+public class Pipeline {
+    static {
+        System.loadLibrary("lept");
+    }
+
+    // Operation codes, must match pipeline.cpp
+    static final int OP_CONVERT_TO_8 = 1;
+    static final int OP_BACKGROUND_NORM_MORPH = 2;
+    static final int OP_OTSU_THRESHOLD = 3;
+    static final int OP_DESKEW = 4;
+    static final int OP_ROTATE = 5;
+    static final int OP_UNSHARP_MASKING = 6;
+    static final int OP_SCALE = 7;
+
+    private final int[] mOps;
+    private final float[] mParams;
+
+    private Pipeline(int[] ops, float[] params) {
+        mOps = ops;
+        mParams = params;
+    }
+
+    /**
+     * Runs all operations on the source image.
+     *
+     * @param pixs the source pix, is not modified
+     * @return a new Pix with the result
+     */
+    public Pix execute(Pix pixs) {
+        if (pixs == null)
+            throw new IllegalArgumentException("Source pix must be non-null");
+
+        long nativePix = nativeExecute(pixs.mNativePix, mOps, mParams);
+
+        if (nativePix == 0)
+            throw new RuntimeException("Failed to natively execute pipeline");
+
+        return new Pix(nativePix);
+    }
+
+    /**
+     * Runs all operations on the source image and writes the result into an
+     * existing Pix instead of returning a new one.
+     *
+     * @param pixs the source pix, is not modified unless it's also pixd
+     * @param pixd The destination pix. Its image is replaced by the result
+     *            and it may be the source pix itself.
+     * @return pixd
+     */
+    public Pix execute(Pix pixs, Pix pixd) {
+        if (pixs == null)
+            throw new IllegalArgumentException("Source pix must be non-null");
+        if (pixd == null)
+            throw new IllegalArgumentException("Destination pix must be non-null");
+
+        long nativePix = nativeExecute(pixs.mNativePix, mOps, mParams);
+
+        if (nativePix == 0)
+            throw new RuntimeException("Failed to natively execute pipeline");
+
+        pixd.replaceData(nativePix);
+
+        return pixd;
+    }
+
+    /**
+     * Builds a Pipeline. The operations run in the order they are added. Each
+     * operation takes the same parameters as the corresponding wrapper method.
+     */
+    public static class Builder {
+        private int[] mOps = new int[16];
+        private int mOpsLength;
+        private float[] mParams = new float[8];
+        private int mParamsLength;
+
+        /**
+         * Converts the image to 8 bpp grayscale.
+         *
+         * @see Convert#convertTo8(Pix)
+         */
+        public Builder convertTo8() {
+            addOp(OP_CONVERT_TO_8);
+
+            return this;
+        }
+
+        /**
+         * Normalizes the background using default parameters.
+         *
+         * @see AdaptiveMap#backgroundNormMorph(Pix)
+         */
+        public Builder backgroundNormMorph() {
+            return backgroundNormMorph(AdaptiveMap.NORM_REDUCTION, AdaptiveMap.NORM_SIZE,
+                    AdaptiveMap.NORM_BG_VALUE);
+        }
+
+        /**
+         * Normalizes the background. The image must be 8 bpp.
+         *
+         * @see AdaptiveMap#backgroundNormMorph(Pix, int, int, int)
+         */
+        public Builder backgroundNormMorph(int reduction, int size, int bgval) {
+            addOp(OP_BACKGROUND_NORM_MORPH, reduction, size, bgval);
+
+            return this;
+        }
+
+        /**
+         * Binarizes the image using default parameters.
+         *
+         * @see Binarize#otsuAdaptiveThreshold(Pix)
+         */
+        public Builder otsuAdaptiveThreshold() {
+            return otsuAdaptiveThreshold(Binarize.OTSU_SIZE_X, Binarize.OTSU_SIZE_Y,
+                    Binarize.OTSU_SMOOTH_X, Binarize.OTSU_SMOOTH_Y, Binarize.OTSU_SCORE_FRACTION);
+        }
+
+        /**
+         * Binarizes the image. The image must be 8 bpp.
+         *
+         * @see Binarize#otsuAdaptiveThreshold(Pix, int, int, int, int, float)
+         */
+        public Builder otsuAdaptiveThreshold(int sizeX, int sizeY, int smoothX, int smoothY,
+                float scoreFraction) {
+            addOp(OP_OTSU_THRESHOLD, sizeX, sizeY, smoothX, smoothY);
+            addParams(scoreFraction);
+
+            return this;
+        }
+
+        /**
+         * Finds the skew angle using default parameters and rotates the image
+         * by it.
+         *
+         * @see Skew#findSkew(Pix)
+         */
+        public Builder deskew() {
+            return deskew(Skew.SWEEP_RANGE, Skew.SWEEP_DELTA, Skew.SWEEP_REDUCTION,
+                    Skew.SEARCH_REDUCTION, Skew.SEARCH_MIN_DELTA, Rotate.ROTATE_QUALITY);
+        }
+
+        /**
+         * Finds the skew angle and rotates the image by it. The image must be
+         * 1 bpp. If no skew is found the image is kept as it is.
+         *
+         * @see Skew#findSkew(Pix, float, float, int, int, float)
+         * @see Rotate#rotate(Pix, float, boolean)
+         */
+        public Builder deskew(float sweepRange, float sweepDelta, int sweepReduction,
+                int searchReduction, float searchMinDelta, boolean quality) {
+            addOp(OP_DESKEW, sweepReduction, searchReduction, quality ? 1 : 0);
+            addParams(sweepRange, sweepDelta, searchMinDelta);
+
+            return this;
+        }
+
+        /**
+         * Rotates the image by the given angle.
+         *
+         * @see Rotate#rotate(Pix, float, boolean)
+         */
+        public Builder rotate(float degrees, boolean quality) {
+            addOp(OP_ROTATE, quality ? 1 : 0);
+            addParams(degrees);
+
+            return this;
+        }
+
+        /**
+         * Sharpens the image.
+         *
+         * @see Enhance#unsharpMasking(Pix, int, float)
+         */
+        public Builder unsharpMasking(int halfwidth, float fraction) {
+            addOp(OP_UNSHARP_MASKING, halfwidth);
+            addParams(fraction);
+
+            return this;
+        }
+
+        /**
+         * Scales the image.
+         *
+         * @see Scale#scale(Pix, float, float)
+         */
+        public Builder scale(float scaleX, float scaleY) {
+            if (scaleX <= 0.0f)
+                throw new IllegalArgumentException("X scaling factor must be positive");
+            if (scaleY <= 0.0f)
+                throw new IllegalArgumentException("Y scaling factor must be positive");
+
+            addOp(OP_SCALE);
+            addParams(scaleX, scaleY);
+
+            return this;
+        }
+
+        /**
+         * Creates the pipeline. The builder can be used further afterwards.
+         */
+        public Pipeline build() {
+            int[] ops = new int[mOpsLength];
+            float[] params = new float[mParamsLength];
+            System.arraycopy(mOps, 0, ops, 0, mOpsLength);
+            System.arraycopy(mParams, 0, params, 0, mParamsLength);
+
+            return new Pipeline(ops, params);
+        }
+
+        private void addOp(int... values) {
+            if (mOpsLength + values.length > mOps.length) {
+                int[] ops = new int[Math.max(mOps.length * 2, mOpsLength + values.length)];
+                System.arraycopy(mOps, 0, ops, 0, mOpsLength);
+                mOps = ops;
+            }
+
+            System.arraycopy(values, 0, mOps, mOpsLength, values.length);
+            mOpsLength += values.length;
+        }
+
+        private void addParams(float... values) {
+            if (mParamsLength + values.length > mParams.length) {
+                float[] params = new float[Math.max(mParams.length * 2,
+                        mParamsLength + values.length)];
+                System.arraycopy(mParams, 0, params, 0, mParamsLength);
+                mParams = params;
+            }
+
+            System.arraycopy(values, 0, mParams, mParamsLength, values.length);
+            mParamsLength += values.length;
+        }
+    }
+
+    // ***************
+    // * NATIVE CODE *
+    // ***************
+
+    private static native long nativeExecute(long nativePix, int[] ops, float[] params);
+}
@@ -18,12 +18,16 @@ package com.googlecode.leptonica.android;
 
 import android.graphics.Rect;
 
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 /**
  * Java representation of a native Leptonica PIX object.
  *
  * @author alanv@google.com (Alan Viverette)
  */
-public class Pix {
+public class Pix implements Closeable {
     static {
         System.loadLibrary("lept");
     }
@@ -37,8 +41,11 @@ public class Pix {
     /** Index of the image bit-depth within the dimensions array. */
     public static final int INDEX_D = 2;
 
-    /** Package-accessible pointer to native pix */
-    final int mNativePix;
+    /**
+     * Package-accessible pointer to native pix. Only changed by
+     * {@link #reset(long)}.
+     */
+    long mNativePix;
 
     private boolean mRecycled;
 
@@ -49,7 +56,7 @@ public class Pix {
      *
      * @param nativePix A pointer to the native PIX object.
      */
-    public Pix(int nativePix) {
+    public Pix(long nativePix) {
         mNativePix = nativePix;
         mRecycled = false;
     }
@@ -72,7 +79,7 @@ public class Pix {
      *
      * @return a native pointer to the Pix object
      */
-    public int getNativePix() {
+    public long getNativePix() {
         return mNativePix;
     }
 
@@ -129,7 +136,7 @@ public class Pix {
      */
     @Override
     public Pix clone() {
-        int nativePix = nativeClone(mNativePix);
+        long nativePix = nativeClone(mNativePix);
 
         if (nativePix == 0) {
             throw new OutOfMemoryError();
@@ -145,7 +152,7 @@ public class Pix {
      * @return a copy of the Pix
      */
     public Pix copy() {
-        int nativePix = nativeCopy(mNativePix);
+        long nativePix = nativeCopy(mNativePix);
 
         if (nativePix == 0) {
             throw new OutOfMemoryError();
@@ -167,7 +174,7 @@ public class Pix {
      * Releases resources and frees any memory associated with this Pix. You may
      * not modify or access the pix after calling this method.
      */
-    public void recycle() {
+    public synchronized void recycle() {
         if (!mRecycled) {
             nativeDestroy(mNativePix);
 
@@ -175,6 +182,54 @@ public class Pix {
         }
     }
 
+    /**
+     * Returns whether this Pix has been recycled. A recycled Pix must not be
+     * accessed any more.
+     *
+     * @return <code>true</code> if {@link #recycle()} was called
+     */
+    public synchronized boolean isRecycled() {
+        return mRecycled;
+    }
+
+    /**
+     * Frees the native PIX object currently wrapped and makes this Pix wrap
+     * another one, so a single wrapper can be reused for many images. The same
+     * rules as for the constructor apply to the new pointer.
+     *
+     * @param nativePix A pointer to the native PIX object.
+     */
+    synchronized void reset(long nativePix) {
+        if (!mRecycled) {
+            nativeDestroy(mNativePix);
+        }
+
+        mNativePix = nativePix;
+        mRecycled = false;
+    }
+
+    /**
+     * Moves the image of another native PIX object into this Pix and frees the
+     * other object. If both have the same size and depth, the pixels are
+     * copied into the existing raster, so it isn't reallocated and views from
+     * getRasterView() stay valid. Otherwise the raster is replaced.
+     *
+     * @param nativePix A pointer to the native PIX object to take the image
+     *            from. Must not be used afterwards.
+     */
+    void replaceData(long nativePix) {
+        if (!nativeReplaceData(mNativePix, nativePix)) {
+            throw new RuntimeException("Failed to natively replace pix data");
+        }
+    }
+
+    /**
+     * Same as {@link #recycle()}.
+     */
+    public void close() {
+        recycle();
+    }
+
     @Override
     protected void finalize() throws Throwable {
         recycle();
@@ -192,7 +247,7 @@ public class Pix {
      * @return a new Pix or <code>null</code> on error
      */
     public static Pix createFromPix(byte[] pixData, int width, int height, int depth) {
-        int nativePix = nativeCreateFromData(pixData, width, height, depth);
+        long nativePix = nativeCreateFromData(pixData, width, height, depth);
 
         if (nativePix == 0) {
             throw new OutOfMemoryError();
@@ -278,22 +333,297 @@ public class Pix {
         nativeSetPixel(mNativePix, x, y, color);
     }
 
+    /**
+     * Reads a rectangle of pixels as {@link android.graphics.Color}s into an
+     * array, in a single native call. The colors are converted the same way as
+     * in {@link #getPixel(int, int)}.
+     *
+     * @param pixels The array to receive the colors.
+     * @param offset The index of the first pixel to write in the array.
+     * @param stride The number of entries in the array between rows (may be
+     *            larger than width).
+     * @param x The x coordinate of the first pixel to read.
+     * @param y The y coordinate of the first pixel to read.
+     * @param width The number of pixels to read from each row.
+     * @param height The number of rows to read.
+     * @throws IllegalArgumentException If the rectangle exceeds the image
+     *             bounds or doesn't fit into the array.
+     */
+    public void getPixels(int[] pixels, int offset, int stride, int x, int y, int width,
+            int height) {
+        checkRegion(pixels == null ? -1 : pixels.length, offset, stride, x, y, width, height);
+
+        if (width > 0 && height > 0) {
+            nativeGetPixels(mNativePix, pixels, offset, stride, x, y, width, height);
+        }
+    }
+
+    /**
+     * Writes a rectangle of pixels from an array of
+     * {@link android.graphics.Color}s, in a single native call. The colors are
+     * converted the same way as in {@link #setPixel(int, int, int)}.
+     *
+     * @param pixels The colors to write.
+     * @param offset The index of the first color to read from the array.
+     * @param stride The number of entries in the array between rows (may be
+     *            larger than width).
+     * @param x The x coordinate of the first pixel to write.
+     * @param y The y coordinate of the first pixel to write.
+     * @param width The number of pixels to write to each row.
+     * @param height The number of rows to write.
+     * @throws IllegalArgumentException If the rectangle exceeds the image
+     *             bounds or doesn't fit into the array.
+     */
+    public void setPixels(int[] pixels, int offset, int stride, int x, int y, int width,
+            int height) {
+        checkRegion(pixels == null ? -1 : pixels.length, offset, stride, x, y, width, height);
+
+        if (width > 0 && height > 0) {
+            nativeSetPixels(mNativePix, pixels, offset, stride, x, y, width, height);
+        }
+    }
+
+    /**
+     * Reads a row of pixels as {@link android.graphics.Color}s.
+     *
+     * @param y The row to read.
+     * @param pixels The array to receive the colors, must hold at least width
+     *            entries.
+     * @see #getPixels(int[], int, int, int, int, int, int)
+     */
+    public void getRow(int y, int[] pixels) {
+        final int width = getWidth();
+
+        getPixels(pixels, 0, width, 0, y, width, 1);
+    }
+
+    /**
+     * Reads a rectangle of raw pixel values into an array, one byte per pixel,
+     * in a single native call. For 8 bpp images these are the gray values, for
+     * lower depths the values are not scaled (a 1 bpp image yields 0 and 1).
+     *
+     * @param samples The array to receive the values.
+     * @param offset The index of the first pixel to write in the array.
+     * @param stride The number of bytes in the array between rows (may be
+     *            larger than width).
+     * @param x The x coordinate of the first pixel to read.
+     * @param y The y coordinate of the first pixel to read.
+     * @param width The number of pixels to read from each row.
+     * @param height The number of rows to read.
+     * @throws IllegalArgumentException If the depth is more than 8 bpp, or the
+     *             rectangle exceeds the image bounds or doesn't fit into the
+     *             array.
+     */
+    public void getSamples(byte[] samples, int offset, int stride, int x, int y, int width,
+            int height) {
+        copySamples(samples, offset, stride, x, y, width, height, false);
+    }
+
+    /**
+     * Writes a rectangle of raw pixel values from an array, one byte per pixel,
+     * in a single native call. Values are not scaled, see
+     * {@link #getSamples(byte[], int, int, int, int, int, int)}.
+     *
+     * @param samples The values to write.
+     * @param offset The index of the first value to read from the array.
+     * @param stride The number of bytes in the array between rows (may be
+     *            larger than width).
+     * @param x The x coordinate of the first pixel to write.
+     * @param y The y coordinate of the first pixel to write.
+     * @param width The number of pixels to write to each row.
+     * @param height The number of rows to write.
+     * @throws IllegalArgumentException If the depth is more than 8 bpp, or the
+     *             rectangle exceeds the image bounds or doesn't fit into the
+     *             array.
+     */
+    public void setSamples(byte[] samples, int offset, int stride, int x, int y, int width,
+            int height) {
+        copySamples(samples, offset, stride, x, y, width, height, true);
+    }
+
+    /**
+     * Reads a row of raw pixel values, one byte per pixel.
+     *
+     * @param y The row to read.
+     * @param samples The array to receive the values, must hold at least width
+     *            bytes.
+     * @see #getSamples(byte[], int, int, int, int, int, int)
+     */
+    public void getRow(int y, byte[] samples) {
+        final int width = getWidth();
+
+        getSamples(samples, 0, width, 0, y, width, 1);
+    }
+
+    /**
+     * Writes a row of raw pixel values, one byte per pixel.
+     *
+     * @param y The row to write.
+     * @param samples The values to write, must hold at least width bytes.
+     * @see #setSamples(byte[], int, int, int, int, int, int)
+     */
+    public void setRow(int y, byte[] samples) {
+        final int width = getWidth();
+
+        setSamples(samples, 0, width, 0, y, width, 1);
+    }
+
+    /**
+     * Reads a rectangle of raw pixel values into a buffer, one byte per pixel
+     * and width bytes per row, starting at the buffer's position. The position
+     * is advanced by width * height. Direct buffers are filled without any
+     * intermediate copy.
+     *
+     * @param samples The buffer to receive the values.
+     * @param x The x coordinate of the first pixel to read.
+     * @param y The y coordinate of the first pixel to read.
+     * @param width The number of pixels to read from each row.
+     * @param height The number of rows to read.
+     * @throws IllegalArgumentException If the depth is more than 8 bpp, the
+     *             rectangle exceeds the image bounds or doesn't fit into the
+     *             remaining buffer, or the buffer is read-only.
+     */
+    public void getSamples(ByteBuffer samples, int x, int y, int width, int height) {
+        copySamples(samples, x, y, width, height, false);
+    }
+
+    /**
+     * Writes a rectangle of raw pixel values from a buffer, one byte per pixel
+     * and width bytes per row, starting at the buffer's position. The position
+     * is advanced by width * height.
+     *
+     * @param samples The values to write.
+     * @param x The x coordinate of the first pixel to write.
+     * @param y The y coordinate of the first pixel to write.
+     * @param width The number of pixels to write to each row.
+     * @param height The number of rows to write.
+     * @throws IllegalArgumentException If the depth is more than 8 bpp, or the
+     *             rectangle exceeds the image bounds or doesn't fit into the
+     *             remaining buffer.
+     */
+    public void setSamples(ByteBuffer samples, int x, int y, int width, int height) {
+        copySamples(samples, x, y, width, height, true);
+    }
+
+    /**
+     * Returns a read-only view of the native raster without copying it. The
+     * view is only valid until this Pix is recycled and must not be used
+     * afterwards.
+     * <p>
+     * The raster has the same layout as the array returned by getData():
+     * getHeight() rows of getWordsPerLine() 32-bit words. Leptonica addresses
+     * pixels within a word from the most significant bit down, and the words
+     * are stored in native byte order, which is little-endian on all Android
+     * ABIs. So for an 8 bpp image pixel x of a row is at byte (x ^ 3), not x.
+     * The returned buffer uses native byte order, so getInt() returns whole
+     * words as leptonica sees them.
+     *
+     * @return a read-only view of the raster
+     */
+    public ByteBuffer getRasterView() {
+        final ByteBuffer raster = nativeGetRaster(mNativePix);
+
+        if (raster == null) {
+            throw new RuntimeException("Failed to natively get raster");
+        }
+
+        return raster.asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Returns the number of 32-bit words in each row of the raster.
+     *
+     * @return the number of words per row
+     */
+    public int getWordsPerLine() {
+        return nativeGetWpl(mNativePix);
+    }
+
+    private void copySamples(byte[] samples, int offset, int stride, int x, int y, int width,
+            int height, boolean toPix) {
+        checkSampleDepth();
+        checkRegion(samples == null ? -1 : samples.length, offset, stride, x, y, width, height);
+
+        if (width > 0 && height > 0) {
+            nativeCopySamples(mNativePix, samples, offset, stride, x, y, width, height, toPix);
+        }
+    }
+
+    private void copySamples(ByteBuffer samples, int x, int y, int width, int height,
+            boolean toPix) {
+        if (samples == null)
+            throw new IllegalArgumentException("Buffer must be non-null");
+        if (!toPix && samples.isReadOnly())
+            throw new IllegalArgumentException("Buffer must be writable");
+
+        final int position = samples.position();
+
+        if (samples.isDirect()) {
+            checkSampleDepth();
+            checkRegion(samples.limit(), position, width, x, y, width, height);
+
+            if (width > 0 && height > 0
+                    && !nativeCopySamplesDirect(mNativePix, samples, position, width, x, y,
+                            width, height, toPix)) {
+                throw new RuntimeException("Failed to natively copy samples");
+            }
+        } else if (samples.hasArray()) {
+            final int offset = samples.arrayOffset();
+            checkRegion(samples.limit(), position, width, x, y, width, height);
+            copySamples(samples.array(), offset + position, width, x, y, width, height, toPix);
+        } else {
+            throw new IllegalArgumentException("Buffer must be direct or backed by an array");
+        }
+
+        samples.position(position + width * height);
+    }
+
+    private void checkSampleDepth() {
+        if (getDepth() > 8)
+            throw new IllegalArgumentException("Pix depth must be 8bpp or less");
+    }
+
+    private void checkRegion(int length, int offset, int stride, int x, int y, int width,
+            int height) {
+        if (length < 0)
+            throw new IllegalArgumentException("Array must be non-null");
+        if (width < 0 || height < 0)
+            throw new IllegalArgumentException("Width and height must be >= 0");
+        if (x < 0 || y < 0 || x + width > getWidth() || y + height > getHeight())
+            throw new IllegalArgumentException("Region exceeds image bounds");
+        if (stride < width)
+            throw new IllegalArgumentException("Stride must be >= width");
+        if (height > 0 && (offset < 0 || offset + (long) (height - 1) * stride + width > length))
+            throw new IllegalArgumentException("Region doesn't fit into the array");
+    }
+
     // ***************
     // * NATIVE CODE *
     // ***************
 
-    private static native int nativeCreatePix(int w, int h, int d);
-    private static native int nativeCreateFromData(byte[] data, int w, int h, int d);
-    private static native boolean nativeGetData(int nativePix, byte[] data);
-    private static native int nativeGetDataSize(int nativePix);
-    private static native int nativeClone(int nativePix);
-    private static native int nativeCopy(int nativePix);
-    private static native boolean nativeInvert(int nativePix);
-    private static native void nativeDestroy(int nativePix);
-    private static native boolean nativeGetDimensions(int nativePix, int[] dimensions);
-    private static native int nativeGetWidth(int nativePix);
-    private static native int nativeGetHeight(int nativePix);
-    private static native int nativeGetDepth(int nativePix);
-    private static native int nativeGetPixel(int nativePix, int x, int y);
-    private static native void nativeSetPixel(int nativePix, int x, int y, int color);
+    private static native long nativeCreatePix(int w, int h, int d);
+    private static native long nativeCreateFromData(byte[] data, int w, int h, int d);
+    private static native boolean nativeGetData(long nativePix, byte[] data);
+    private static native int nativeGetDataSize(long nativePix);
+    private static native long nativeClone(long nativePix);
+    private static native long nativeCopy(long nativePix);
+    private static native boolean nativeInvert(long nativePix);
+    private static native void nativeDestroy(long nativePix);
+    private static native boolean nativeGetDimensions(long nativePix, int[] dimensions);
+    private static native int nativeGetWidth(long nativePix);
+    private static native int nativeGetHeight(long nativePix);
+    private static native int nativeGetDepth(long nativePix);
+    private static native int nativeGetPixel(long nativePix, int x, int y);
+    private static native void nativeSetPixel(long nativePix, int x, int y, int color);
+    private static native void nativeGetPixels(long nativePix, int[] pixels, int offset,
+            int stride, int x, int y, int w, int h);
+    private static native void nativeSetPixels(long nativePix, int[] pixels, int offset,
+            int stride, int x, int y, int w, int h);
+    private static native void nativeCopySamples(long nativePix, byte[] samples, int offset,
+            int stride, int x, int y, int w, int h, boolean toPix);
+    private static native boolean nativeCopySamplesDirect(long nativePix, ByteBuffer samples,
+            int offset, int stride, int x, int y, int w, int h, boolean toPix);
+    private static native ByteBuffer nativeGetRaster(long nativePix);
+    private static native int nativeGetWpl(long nativePix);
+    private static native boolean nativeReplaceData(long nativeDst, long nativeSrc);
 }
@@ -0,0 +1,134 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.googlecode.leptonica.android;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Keeps Pix objects that are not needed any more, keyed by width, height and
+ * depth, so they can be passed as destination to the transform methods that
+ * take one (e.g. {@link Scale#scale(Pix, float, float, Pix)}) instead of
+ * creating a new Pix for every frame. When the destination has the size of
+ * the result, its raster is reused.
+ * <p>
+ * All methods are thread-safe.
+ */
+public class PixPool {
+    private final int mMaxSize;
+
+    /** Pooled Pix, most recently added first. */
+    private final LinkedList<Entry> mEntries = new LinkedList<Entry>();
+
+    private static class Entry {
+        final Pix pix;
+        final int width;
+        final int height;
+        final int depth;
+
+        Entry(Pix pix, int[] dimensions) {
+            this.pix = pix;
+            this.width = dimensions[Pix.INDEX_W];
+            this.height = dimensions[Pix.INDEX_H];
+            this.depth = dimensions[Pix.INDEX_D];
+        }
+    }
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param maxSize The maximum number of Pix kept in the pool.
+     */
+    public PixPool(int maxSize) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("Pool must keep at least one pix");
+
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Takes a Pix with the given width, height and depth out of the pool, or
+     * creates a new one if there is none. The contents of a pooled Pix are
+     * undefined.
+     *
+     * @param width The width of the Pix.
+     * @param height The height of the Pix.
+     * @param depth The bit-depth of the Pix.
+     * @return a Pix with the given dimensions
+     */
+    public Pix get(int width, int height, int depth) {
+        synchronized (this) {
+            for (Iterator<Entry> it = mEntries.iterator(); it.hasNext();) {
+                final Entry entry = it.next();
+
+                if (entry.width == width && entry.height == height && entry.depth == depth) {
+                    it.remove();
+                    return entry.pix;
+                }
+            }
+        }
+
+        return new Pix(width, height, depth);
+    }
+
+    /**
+     * Gives a Pix to the pool. It must not be used by the caller afterwards.
+     * If the pool is full, the oldest Pix is recycled.
+     *
+     * @param pix The Pix to keep for reuse, may be <code>null</code>. A
+     *            recycled Pix is ignored.
+     */
+    public void put(Pix pix) {
+        if (pix == null || pix.isRecycled())
+            return;
+
+        final int[] dimensions = pix.getDimensions();
+
+        if (dimensions == null) {
+            pix.recycle();
+            return;
+        }
+
+        Entry evicted = null;
+
+        synchronized (this) {
+            mEntries.addFirst(new Entry(pix, dimensions));
+
+            if (mEntries.size() > mMaxSize) {
+                evicted = mEntries.removeLast();
+            }
+        }
+
+        if (evicted != null) {
+            evicted.pix.recycle();
+        }
+    }
+
+    /**
+     * Recycles all Pix in the pool.
+     */
+    public void clear() {
+        final LinkedList<Entry> old;
+
+        synchronized (this) {
+            old = new LinkedList<Entry>(mEntries);
+            mEntries.clear();
+        }
+
+        for (Entry entry : old) {
+            entry.pix.recycle();
+        }
+    }
+}
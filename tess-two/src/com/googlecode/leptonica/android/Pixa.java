@@ -18,6 +18,7 @@ package com.googlecode.leptonica.android;
 
 import android.graphics.Rect;
 
+import java.io.Closeable;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -28,13 +29,13 @@ import java.util.Iterator;
  *
  * @author alanv@google.com (Alan Viverette)
  */
-public class Pixa implements Iterable<Pix> {
+public class Pixa implements Iterable<Pix>, Closeable {
     static {
         System.loadLibrary("lept");
     }
 
     /** A pointer to the native PIXA object. This is used internally by native code. */
-    final int mNativePixa;
+    final long mNativePixa;
 
     /** The specified width of this Pixa. */
     final int mWidth;
@@ -68,7 +69,7 @@ public class Pixa implements Iterable<Pix> {
      * @return a new Pixa or <code>null</code> on error
      */
     public static Pixa createPixa(int size, int width, int height) {
-        int nativePixa = nativeCreate(size);
+        long nativePixa = nativeCreate(size);
 
         if (nativePixa == 0) {
             throw new OutOfMemoryError();
@@ -84,7 +85,7 @@ public class Pixa implements Iterable<Pix> {
      * @param width The width of the PIXA.
      * @param height The height of the PIXA.
      */
-    public Pixa(int nativePixa, int width, int height) {
+    public Pixa(long nativePixa, int width, int height) {
         mNativePixa = nativePixa;
         mWidth = width;
         mHeight = height;
@@ -96,7 +97,7 @@ public class Pixa implements Iterable<Pix> {
      *
      * @return a pointer to the native PIXA object
      */
-    public int getNativePixa() {
+    public long getNativePixa() {
         return mNativePixa;
     }
 
@@ -107,7 +108,7 @@ public class Pixa implements Iterable<Pix> {
      * @return a shallow copy of this Pixa
      */
     public Pixa copy() {
-        int nativePixa = nativeCopy(mNativePixa);
+        long nativePixa = nativeCopy(mNativePixa);
 
         if (nativePixa == 0) {
             throw new OutOfMemoryError();
@@ -127,7 +128,7 @@ public class Pixa implements Iterable<Pix> {
      * @return a sorted copy of this Pixa
      */
     public Pixa sort(int field, int order) {
-        int nativePixa = nativeSort(mNativePixa, field, order);
+        long nativePixa = nativeSort(mNativePixa, field, order);
 
         if (nativePixa == 0) {
             throw new OutOfMemoryError();
@@ -161,6 +162,13 @@ public class Pixa implements Iterable<Pix> {
         }
     }
 
+    /**
+     * Same as {@link #recycle()}.
+     */
+    public void close() {
+        recycle();
+    }
+
     @Override
     protected void finalize() throws Throwable {
         recycle();
@@ -219,7 +227,7 @@ public class Pixa implements Iterable<Pix> {
      * @return the Box at the specified index, or <code>null</code> on error
      */
     public Box getBox(int index) {
-        int nativeBox = nativeGetBox(mNativePixa, index);
+        long nativeBox = nativeGetBox(mNativePixa, index);
 
         if (nativeBox == 0) {
             return null;
@@ -235,7 +243,7 @@ public class Pixa implements Iterable<Pix> {
      * @return the Pix at the specified index, or <code>null</code> on error
      */
     public Pix getPix(int index) {
-        int nativePix = nativeGetPix(mNativePixa, index);
+        long nativePix = nativeGetPix(mNativePixa, index);
 
         if (nativePix == 0) {
             return null;
@@ -329,22 +337,43 @@ public class Pixa implements Iterable<Pix> {
         return nativeGetBoxGeometry(mNativePixa, index, dimensions);
     }
 
+    /**
+     * Fills an array with the geometry of all Boxes in a single native call.
+     * The geometry of the Box at index i starts at out[i * 4], see Box.INDEX_*
+     * for the order within. Boxes that can't be read are filled with zeros.
+     *
+     * @param out The array to fill with Box geometry. Must be at least 4 *
+     *            size() elements.
+     * @return the number of Boxes written to the array
+     */
+    public int getAllBoxGeometry(int[] out) {
+        if (out == null)
+            throw new IllegalArgumentException("Array must be non-null");
+
+        final int count = nativeGetAllBoxGeometry(mNativePixa, out);
+
+        if (count < 0)
+            throw new IllegalArgumentException("Array must hold at least " + (-count) + " elements");
+
+        return count;
+    }
+
     /**
      * Returns an ArrayList of Box bounding Rects.
      *
      * @return an ArrayList of Box bounding Rects
      */
     public ArrayList<Rect> getBoxRects() {
-        final int pixaCount = nativeGetCount(mNativePixa);
-        final int[] buffer = new int[4];
+        final int[] buffer = new int[4 * nativeGetCount(mNativePixa)];
+        final int pixaCount = getAllBoxGeometry(buffer);
         final ArrayList<Rect> rects = new ArrayList<Rect>(pixaCount);
 
         for (int i = 0; i < pixaCount; i++) {
-            getBoxGeometry(i, buffer);
-
-            final int x = buffer[Box.INDEX_X];
-            final int y = buffer[Box.INDEX_Y];
-            final Rect bound = new Rect(x, y, x + buffer[Box.INDEX_W], y + buffer[Box.INDEX_H]);
+            final int offset = i * 4;
+            final int x = buffer[offset + Box.INDEX_X];
+            final int y = buffer[offset + Box.INDEX_Y];
+            final Rect bound = new Rect(x, y, x + buffer[offset + Box.INDEX_W],
+                    y + buffer[offset + Box.INDEX_H]);
 
             rects.add(bound);
         }
@@ -388,23 +417,56 @@ public class Pixa implements Iterable<Pix> {
     }
 
     public Iterator<Pix> iterator() {
-        return new PixIterator();
+        return new PixIterator(false);
+    }
+
+    /**
+     * Returns an iterator that hands out the same Pix wrapper on every call to
+     * next(), wrapping the next image each time. The previously returned image
+     * is freed when advancing, so it must not be kept or recycled by the caller.
+     * The remaining wrapper is freed when it's finalized, or by recycling it
+     * once iteration is done.
+     * <p>
+     * Like {@link #iterator()}, the number of elements is read once when the
+     * iterator is created, so the Pixa must not change during iteration.
+     *
+     * @return an iterator that reuses a single Pix wrapper
+     */
+    public Iterator<Pix> reusingIterator() {
+        return new PixIterator(true);
     }
 
     private class PixIterator implements Iterator<Pix> {
+        private final int mSize;
+        private final boolean mReuse;
         private int mIndex;
+        private Pix mPix;
 
-        private PixIterator() {
+        private PixIterator(boolean reuse) {
+            mSize = size();
+            mReuse = reuse;
             mIndex = 0;
         }
 
         public boolean hasNext() {
-            final int size = size();
-            return (size > 0 && mIndex < size);
+            return mIndex < mSize;
         }
 
         public Pix next() {
-            return getPix(mIndex++);
+            if (!mReuse || mPix == null) {
+                mPix = getPix(mIndex++);
+                return mPix;
+            }
+
+            long nativePix = nativeGetPix(mNativePixa, mIndex++);
+
+            if (nativePix == 0) {
+                return null;
+            }
+
+            mPix.reset(nativePix);
+
+            return mPix;
         }
 
         public void remove() {
@@ -416,35 +478,37 @@ public class Pixa implements Iterable<Pix> {
     // * NATIVE CODE *
     // ***************
 
-    private static native int nativeCreate(int size);
+    private static native long nativeCreate(int size);
 
-    private static native int nativeCopy(int nativePixa);
+    private static native long nativeCopy(long nativePixa);
 
-    private static native int nativeSort(int nativePixa, int field, int order);
+    private static native long nativeSort(long nativePixa, int field, int order);
 
-    private static native boolean nativeJoin(int nativePixa, int otherPixa);
+    private static native boolean nativeJoin(long nativePixa, long otherPixa);
 
-    private static native int nativeGetCount(int nativePixa);
+    private static native int nativeGetCount(long nativePixa);
 
-    private static native void nativeDestroy(int nativePixa);
+    private static native void nativeDestroy(long nativePixa);
 
-    private static native void nativeAddPix(int nativePixa, int nativePix, int mode);
+    private static native void nativeAddPix(long nativePixa, long nativePix, int mode);
 
-    private static native void nativeAddBox(int nativePixa, int nativeBox, int mode);
+    private static native void nativeAddBox(long nativePixa, long nativeBox, int mode);
 
-    private static native void nativeAdd(int nativePixa, int nativePix, int nativeBox, int mode);
+    private static native void nativeAdd(long nativePixa, long nativePix, long nativeBox, int mode);
 
     private static native boolean nativeWriteToFileRandomCmap(
-            int nativePixa, String fileName, int width, int height);
+            long nativePixa, String fileName, int width, int height);
 
     private static native void nativeReplacePix(
-            int nativePixa, int index, int nativePix, int nativeBox);
+            long nativePixa, int index, long nativePix, long nativeBox);
+
+    private static native void nativeMergeAndReplacePix(long nativePixa, int indexA, int indexB);
 
-    private static native void nativeMergeAndReplacePix(int nativePixa, int indexA, int indexB);
+    private static native long nativeGetBox(long nativePix, int index);
 
-    private static native int nativeGetBox(int nativePix, int index);
+    private static native long nativeGetPix(long nativePix, int index);
 
-    private static native int nativeGetPix(int nativePix, int index);
+    private static native boolean nativeGetBoxGeometry(long nativePixa, int index, int[] dimensions);
 
-    private static native boolean nativeGetBoxGeometry(int nativePixa, int index, int[] dimensions);
+    private static native int nativeGetAllBoxGeometry(long nativePixa, int[] dimensions);
 }
@@ -18,8 +18,10 @@ package com.googlecode.leptonica.android;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Rect;
 
 import java.io.File;
+import java.nio.ByteBuffer;
 
 /**
  * Image input and output methods.
@@ -72,7 +74,7 @@ public class ReadFile {
         if (pixelData.length < width * height)
             throw new IllegalArgumentException("Array length does not match dimensions");
 
-        int nativePix = nativeReadBytes8(pixelData, width, height);
+        long nativePix = nativeReadBytes8(pixelData, width, height);
 
         if (nativePix == 0)
             throw new RuntimeException("Failed to read pix from memory");
@@ -109,6 +111,148 @@ public class ReadFile {
         return nativeReplaceBytes8(pixs.mNativePix, pixelData, width, height);
     }
 
+    /**
+     * Creates an 8bpp Pix object from raw 8bpp grayscale pixels in a direct
+     * ByteBuffer, e.g. the luminance plane of a camera frame. The pixels are
+     * read straight from the buffer's memory without an intermediate copy.
+     *
+     * @param buffer A direct buffer containing 8bpp grayscale pixel data.
+     * @param width The width of the input image.
+     * @param height The height of the input image.
+     * @param stride The number of bytes between the starts of two rows.
+     * @return an 8bpp Pix object
+     */
+    public static Pix readDirectBuffer(ByteBuffer buffer, int width, int height, int stride) {
+        checkDirectBuffer(buffer, width, height, stride);
+
+        long nativePix = nativeReadDirectBuffer(buffer, width, height, stride);
+
+        if (nativePix == 0)
+            throw new RuntimeException("Failed to read pix from buffer");
+
+        return new Pix(nativePix);
+    }
+
+    /**
+     * Replaces the pixels of an 8bpp Pix object with raw 8bpp grayscale
+     * pixels from a direct ByteBuffer. Width and height must be identical to
+     * the input Pix. Use this to refill the same Pix frame after frame instead
+     * of allocating a new one.
+     *
+     * @param pixs The Pix whose pixels will be replaced.
+     * @param buffer A direct buffer containing 8bpp grayscale pixel data.
+     * @param width The width of the input image.
+     * @param height The height of the input image.
+     * @param stride The number of bytes between the starts of two rows.
+     * @return <code>true</code> on success
+     */
+    public static boolean replaceDirectBuffer(
+            Pix pixs, ByteBuffer buffer, int width, int height, int stride) {
+        if (pixs == null)
+            throw new IllegalArgumentException("Source pix must be non-null");
+        checkDirectBuffer(buffer, width, height, stride);
+        if (pixs.getWidth() != width)
+            throw new IllegalArgumentException("Source pix width does not match image width");
+        if (pixs.getHeight() != height)
+            throw new IllegalArgumentException("Source pix height does not match image height");
+
+        return nativeReplaceDirectBuffer(pixs.mNativePix, buffer, width, height, stride);
+    }
+
+    private static void checkDirectBuffer(ByteBuffer buffer, int width, int height, int stride) {
+        if (buffer == null)
+            throw new IllegalArgumentException("Buffer must be non-null");
+        if (!buffer.isDirect())
+            throw new IllegalArgumentException("Buffer must be a direct buffer");
+        if (width <= 0)
+            throw new IllegalArgumentException("Image width must be greater than 0");
+        if (height <= 0)
+            throw new IllegalArgumentException("Image height must be greater than 0");
+        if (stride < width)
+            throw new IllegalArgumentException("Stride must not be smaller than the width");
+        if (buffer.capacity() < (long) stride * (height - 1) + width)
+            throw new IllegalArgumentException("Buffer capacity does not match dimensions");
+    }
+
+    /**
+     * Creates an 8bpp grayscale Pix object from a region of an NV21 camera
+     * frame in a single native pass. Only the luminance plane is read, and
+     * only the rows and columns within the region. With a reduction > 1 every
+     * block of reduction x reduction pixels is averaged into one pixel, so the
+     * Pix is (region width / reduction) x (region height / reduction).
+     *
+     * @param data The NV21 frame data (only the first width * height bytes,
+     *            the luminance plane, are needed).
+     * @param width The width of the frame.
+     * @param height The height of the frame.
+     * @param roi The region of the frame to read, or <code>null</code> for the
+     *            whole frame.
+     * @param reduction The downscaling factor, 1 for none.
+     * @return an 8bpp Pix object
+     */
+    public static Pix readNV21(byte[] data, int width, int height, Rect roi, int reduction) {
+        if (data == null)
+            throw new IllegalArgumentException("Byte array must be non-null");
+        if (data.length < (long) width * height)
+            throw new IllegalArgumentException("Array length does not match dimensions");
+
+        final Rect region = checkNV21Region(width, height, roi, reduction);
+
+        long nativePix = nativeReadNV21(data, width, region.left, region.top, region.width(),
+                region.height(), reduction);
+
+        if (nativePix == 0)
+            throw new RuntimeException("Failed to read pix from NV21 frame");
+
+        return new Pix(nativePix);
+    }
+
+    /**
+     * Creates an 8bpp grayscale Pix object from a region of an NV21 camera
+     * frame in a direct ByteBuffer. The same as
+     * {@link #readNV21(byte[], int, int, Rect, int)}, but the pixels are read
+     * straight from the buffer's memory.
+     *
+     * @param buffer A direct buffer containing the NV21 frame data.
+     * @param width The width of the frame.
+     * @param height The height of the frame.
+     * @param roi The region of the frame to read, or <code>null</code> for the
+     *            whole frame.
+     * @param reduction The downscaling factor, 1 for none.
+     * @return an 8bpp Pix object
+     */
+    public static Pix readNV21(ByteBuffer buffer, int width, int height, Rect roi,
+            int reduction) {
+        checkDirectBuffer(buffer, width, height, width);
+
+        final Rect region = checkNV21Region(width, height, roi, reduction);
+
+        long nativePix = nativeReadNV21Direct(buffer, width, region.left, region.top,
+                region.width(), region.height(), reduction);
+
+        if (nativePix == 0)
+            throw new RuntimeException("Failed to read pix from NV21 frame");
+
+        return new Pix(nativePix);
+    }
+
+    private static Rect checkNV21Region(int width, int height, Rect roi, int reduction) {
+        if (width <= 0)
+            throw new IllegalArgumentException("Image width must be greater than 0");
+        if (height <= 0)
+            throw new IllegalArgumentException("Image height must be greater than 0");
+        if (reduction < 1)
+            throw new IllegalArgumentException("Reduction must be at least 1");
+        if (roi == null)
+            roi = new Rect(0, 0, width, height);
+        if (roi.left < 0 || roi.top < 0 || roi.right > width || roi.bottom > height)
+            throw new IllegalArgumentException("Region exceeds image bounds");
+        if (roi.width() < reduction || roi.height() < reduction)
+            throw new IllegalArgumentException("Region must be at least reduction pixels wide and high");
+
+        return roi;
+    }
+
     /**
      * Creates a Pixa object from encoded files in a directory. Supported
      * formats are BMP and JPEG.
@@ -156,8 +300,10 @@ public class ReadFile {
     }
 
     /**
-     * Creates a Pix object from Bitmap data. Currently supports only
-     * ARGB_8888-formatted bitmaps.
+     * Creates an 8 bpp grayscale Pix object from Bitmap data. Supports
+     * ARGB_8888, RGB_565 and ALPHA_8 bitmaps. The alpha of ARGB_8888 bitmaps is
+     * ignored, while the single channel of ALPHA_8 bitmaps is taken as gray
+     * value.
      *
      * @param bmp The Bitmap object to convert to a Pix.
      * @return a Pix object
@@ -165,10 +311,13 @@ public class ReadFile {
     public static Pix readBitmap(Bitmap bmp) {
         if (bmp == null)
             throw new IllegalArgumentException("Bitmap must be non-null");
-        if (bmp.getConfig() != Bitmap.Config.ARGB_8888)
-            throw new IllegalArgumentException("Bitmap config must be ARGB_8888");
+        if (bmp.getConfig() != Bitmap.Config.ARGB_8888
+                && bmp.getConfig() != Bitmap.Config.RGB_565
+                && bmp.getConfig() != Bitmap.Config.ALPHA_8)
+            throw new IllegalArgumentException(
+                    "Bitmap config must be ARGB_8888, RGB_565 or ALPHA_8");
 
-        int nativePix = nativeReadBitmap(bmp);
+        long nativePix = nativeReadBitmap(bmp);
 
         if (nativePix == 0)
             throw new RuntimeException("Failed to read pix from bitmap");
@@ -180,15 +329,26 @@ public class ReadFile {
     // * NATIVE CODE *
     // ***************
 
-    private static native int nativeReadMem(byte[] data, int size);
+    private static native long nativeReadMem(byte[] data, int size);
+
+    private static native long nativeReadBytes8(byte[] data, int w, int h);
+
+    private static native boolean nativeReplaceBytes8(long nativePix, byte[] data, int w, int h);
+
+    private static native long nativeReadDirectBuffer(ByteBuffer buffer, int w, int h, int stride);
+
+    private static native boolean nativeReplaceDirectBuffer(
+            long nativePix, ByteBuffer buffer, int w, int h, int stride);
 
-    private static native int nativeReadBytes8(byte[] data, int w, int h);
+    private static native long nativeReadNV21(
+            byte[] data, int width, int x, int y, int w, int h, int reduction);
 
-    private static native boolean nativeReplaceBytes8(int nativePix, byte[] data, int w, int h);
+    private static native long nativeReadNV21Direct(
+            ByteBuffer buffer, int width, int x, int y, int w, int h, int reduction);
 
-    private static native int nativeReadFiles(String dirname, String prefix);
+    private static native long nativeReadFiles(String dirname, String prefix);
 
-    private static native int nativeReadFile(String filename);
+    private static native long nativeReadFile(String filename);
 
-    private static native int nativeReadBitmap(Bitmap bitmap);
+    private static native long nativeReadBitmap(Bitmap bitmap);
 }
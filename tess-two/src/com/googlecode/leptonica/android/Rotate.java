@@ -67,7 +67,57 @@ public class Rotate {
         if (pixs == null)
             throw new IllegalArgumentException("Source pix must be non-null");
 
-        int nativePix = nativeRotate(pixs.mNativePix, degrees, quality);
+        long nativePix = nativeRotate(pixs.mNativePix, degrees, quality);
+
+        if (nativePix == 0)
+            return null;
+
+        return new Pix(nativePix);
+    }
+
+    /**
+     * Same as {@link #rotate(Pix, float, boolean)}, but writes the result into
+     * an existing Pix instead of returning a new one.
+     *
+     * @param pixs The source pix.
+     * @param degrees The number of degrees to rotate; clockwise is positive.
+     * @param quality Whether to use high-quality rotation.
+     * @param pixd The destination pix. Its image is replaced by the result
+     *            and it may be the source pix itself.
+     * @return pixd, or <code>null</code> on error
+     */
+    public static Pix rotate(Pix pixs, float degrees, boolean quality, Pix pixd) {
+        if (pixs == null)
+            throw new IllegalArgumentException("Source pix must be non-null");
+        if (pixd == null)
+            throw new IllegalArgumentException("Destination pix must be non-null");
+
+        long nativePix = nativeRotate(pixs.mNativePix, degrees, quality);
+
+        if (nativePix == 0)
+            return null;
+
+        pixd.replaceData(nativePix);
+
+        return pixd;
+    }
+
+    /**
+     * Rotates by a multiple of 90 degrees. This is a lossless pixel copy, so
+     * it is much faster than {@link #rotate(Pix, float)} and doesn't bring in
+     * any pixels from outside the image.
+     *
+     * @param pixs The source pix.
+     * @param quads The number of 90 degree steps to rotate clockwise (0 to 3).
+     * @return the rotated source image
+     */
+    public static Pix rotateOrth(Pix pixs, int quads) {
+        if (pixs == null)
+            throw new IllegalArgumentException("Source pix must be non-null");
+        if (quads < 0 || quads > 3)
+            throw new IllegalArgumentException("quads not in {0,1,2,3}");
+
+        long nativePix = nativeRotateOrth(pixs.mNativePix, quads);
 
         if (nativePix == 0)
             return null;
@@ -79,5 +129,7 @@ public class Rotate {
     // * NATIVE CODE *
     // ***************
 
-    private static native int nativeRotate(int nativePix, float degrees, boolean quality);
+    private static native long nativeRotate(long nativePix, float degrees, boolean quality);
+
+    private static native long nativeRotateOrth(long nativePix, int quads);
 }
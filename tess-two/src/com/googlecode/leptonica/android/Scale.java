@@ -112,7 +112,7 @@ public class Scale {
         if (scaleY <= 0.0f)
             throw new IllegalArgumentException("Y scaling factor must be positive");
 
-        int nativePix = nativeScale(pixs.mNativePix, scaleX, scaleY);
+        long nativePix = nativeScale(pixs.mNativePix, scaleX, scaleY);
 
         if (nativePix == 0)
             throw new RuntimeException("Failed to natively scale pix");
@@ -120,9 +120,40 @@ public class Scale {
         return new Pix(nativePix);
     }
 
+    /**
+     * Same as {@link #scale(Pix, float, float)}, but writes the result into an
+     * existing Pix instead of returning a new one.
+     *
+     * @param pixs the source Pix
+     * @param scaleX x-dimension (width) scaling factor
+     * @param scaleY y-dimension (height) scaling factor
+     * @param pixd The destination pix. Its image is replaced by the result
+     *            and it may be the source pix itself.
+     * @return pixd
+     */
+    public static Pix scale(Pix pixs, float scaleX, float scaleY, Pix pixd) {
+        if (pixs == null)
+            throw new IllegalArgumentException("Source pix must be non-null");
+        if (pixd == null)
+            throw new IllegalArgumentException("Destination pix must be non-null");
+        if (scaleX <= 0.0f)
+            throw new IllegalArgumentException("X scaling factor must be positive");
+        if (scaleY <= 0.0f)
+            throw new IllegalArgumentException("Y scaling factor must be positive");
+
+        long nativePix = nativeScale(pixs.mNativePix, scaleX, scaleY);
+
+        if (nativePix == 0)
+            throw new RuntimeException("Failed to natively scale pix");
+
+        pixd.replaceData(nativePix);
+
+        return pixd;
+    }
+
     // ***************
     // * NATIVE CODE *
     // ***************
 
-    private static native int nativeScale(int nativePix, float scaleX, float scaleY);
+    private static native long nativeScale(long nativePix, float scaleX, float scaleY);
 }
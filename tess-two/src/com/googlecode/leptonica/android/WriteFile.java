@@ -193,18 +193,46 @@ public class WriteFile {
         return null;
     }
 
+    /**
+     * Writes a Pix into an existing Android Bitmap object, so no new Bitmap
+     * has to be allocated for every image. The Bitmap must be mutable, in
+     * ARGB_8888 format and have the same width and height as the Pix.
+     *
+     * @param pixs The source image.
+     * @param bitmap The Bitmap to overwrite with the source image.
+     * @return <code>true</code> on success
+     */
+    public static boolean writeBitmap(Pix pixs, Bitmap bitmap) {
+        if (pixs == null)
+            throw new IllegalArgumentException("Source pix must be non-null");
+        if (bitmap == null)
+            throw new IllegalArgumentException("Bitmap must be non-null");
+        if (!bitmap.isMutable())
+            throw new IllegalArgumentException("Bitmap must be mutable");
+        if (bitmap.getConfig() != Bitmap.Config.ARGB_8888)
+            throw new IllegalArgumentException("Bitmap config must be ARGB_8888");
+
+        final int[] dimensions = pixs.getDimensions();
+
+        if (bitmap.getWidth() != dimensions[Pix.INDEX_W]
+                || bitmap.getHeight() != dimensions[Pix.INDEX_H])
+            throw new IllegalArgumentException("Bitmap and pix dimensions must match");
+
+        return nativeWriteBitmap(pixs.mNativePix, bitmap);
+    }
+
     // ***************
     // * NATIVE CODE *
     // ***************
 
-    private static native int nativeWriteBytes8(int nativePix, byte[] data);
+    private static native int nativeWriteBytes8(long nativePix, byte[] data);
 
-    private static native boolean nativeWriteFiles(int nativePix, String rootname, int format);
+    private static native boolean nativeWriteFiles(long nativePix, String rootname, int format);
 
-    private static native byte[] nativeWriteMem(int nativePix, int format);
+    private static native byte[] nativeWriteMem(long nativePix, int format);
 
     private static native boolean nativeWriteImpliedFormat(
-            int nativePix, String fileName, int quality, boolean progressive);
+            long nativePix, String fileName, int quality, boolean progressive);
 
-    private static native boolean nativeWriteBitmap(int nativePix, Bitmap bitmap);
+    private static native boolean nativeWriteBitmap(long nativePix, Bitmap bitmap);
 }
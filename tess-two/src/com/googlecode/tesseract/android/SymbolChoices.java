@@ -0,0 +1,202 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.googlecode.tesseract.android;
+
+/**
+ * The classifier choices for every recognized symbol (character), grouped by
+ * word, in reading order. Each symbol has one or more candidate glyphs with
+ * confidences, best first.
+ * <p>
+ * Everything is stored in a flat encoding: the candidate glyphs are
+ * concatenated into a single string, symbols are ranges of candidates and words
+ * are ranges of symbols. Symbols are addressed by their index over all words.
+ *
+ * @see TessBaseAPI#getSymbolChoices()
+ */
+public class SymbolChoices {
+    private final String mText;
+    private final int[] mOffsets;
+    private final float[] mConfidences;
+    private final int[] mSymbolStarts;
+    private final int[] mWordStarts;
+
+    /**
+     * Called from native code.
+     *
+     * @param text all candidate glyphs concatenated
+     * @param offsets the start of each candidate in text, plus the length of
+     *            text
+     * @param confidences the confidence of each candidate
+     * @param symbolStarts the first candidate of each symbol, plus the number
+     *            of candidates
+     * @param wordStarts the first symbol of each word, plus the number of
+     *            symbols
+     */
+    SymbolChoices(String text, int[] offsets, float[] confidences, int[] symbolStarts,
+            int[] wordStarts) {
+        mText = text;
+        mOffsets = offsets;
+        mConfidences = confidences;
+        mSymbolStarts = symbolStarts;
+        mWordStarts = wordStarts;
+    }
+
+    /**
+     * Returns the number of words.
+     *
+     * @return the number of words
+     */
+    public int getWordCount() {
+        return mWordStarts.length - 1;
+    }
+
+    /**
+     * Returns the number of symbols in all words.
+     *
+     * @return the number of symbols
+     */
+    public int getSymbolCount() {
+        return mSymbolStarts.length - 1;
+    }
+
+    /**
+     * Returns the index of the first symbol of a word.
+     *
+     * @param word the index of the word
+     * @return the index of the first symbol
+     */
+    public int getWordStart(int word) {
+        if (word < 0 || word >= getWordCount())
+            throw new IndexOutOfBoundsException("Word " + word + " of " + getWordCount());
+
+        return mWordStarts[word];
+    }
+
+    /**
+     * Returns the index after the last symbol of a word.
+     *
+     * @param word the index of the word
+     * @return the index after the last symbol
+     */
+    public int getWordEnd(int word) {
+        if (word < 0 || word >= getWordCount())
+            throw new IndexOutOfBoundsException("Word " + word + " of " + getWordCount());
+
+        return mWordStarts[word + 1];
+    }
+
+    /**
+     * Returns the number of candidates of a symbol.
+     *
+     * @param symbol the index of the symbol
+     * @return the number of candidates, at least 1
+     */
+    public int getChoiceCount(int symbol) {
+        checkSymbol(symbol);
+
+        return mSymbolStarts[symbol + 1] - mSymbolStarts[symbol];
+    }
+
+    /**
+     * Returns a candidate glyph of a symbol.
+     *
+     * @param symbol the index of the symbol
+     * @param choice the index of the candidate, 0 is the best one
+     * @return the candidate glyph
+     */
+    public String getChoice(int symbol, int choice) {
+        int i = candidate(symbol, choice);
+
+        return mText.substring(mOffsets[i], mOffsets[i + 1]);
+    }
+
+    /**
+     * Returns the confidence of a candidate glyph of a symbol.
+     *
+     * @param symbol the index of the symbol
+     * @param choice the index of the candidate, 0 is the best one
+     * @return the confidence (between 0 and 100)
+     */
+    public float getConfidence(int symbol, int choice) {
+        return mConfidences[candidate(symbol, choice)];
+    }
+
+    /**
+     * Returns all candidate glyphs concatenated. Use getCandidateOffsets() to
+     * find the single candidates.
+     *
+     * @return the text of all candidates
+     */
+    public String getCandidateText() {
+        return mText;
+    }
+
+    /**
+     * Returns the start of each candidate in getCandidateText(), followed by
+     * the length of the text. The array must not be modified.
+     *
+     * @return the candidate offsets
+     */
+    public int[] getCandidateOffsets() {
+        return mOffsets;
+    }
+
+    /**
+     * Returns the confidence of each candidate. The array must not be
+     * modified.
+     *
+     * @return the candidate confidences
+     */
+    public float[] getCandidateConfidences() {
+        return mConfidences;
+    }
+
+    /**
+     * Returns the index of the first candidate of each symbol, followed by the
+     * number of candidates. The array must not be modified.
+     *
+     * @return the symbol starts
+     */
+    public int[] getSymbolStarts() {
+        return mSymbolStarts;
+    }
+
+    /**
+     * Returns the index of the first symbol of each word, followed by the
+     * number of symbols. The array must not be modified.
+     *
+     * @return the word starts
+     */
+    public int[] getWordStarts() {
+        return mWordStarts;
+    }
+
+    private void checkSymbol(int symbol) {
+        if (symbol < 0 || symbol >= getSymbolCount())
+            throw new IndexOutOfBoundsException("Symbol " + symbol + " of " + getSymbolCount());
+    }
+
+    private int candidate(int symbol, int choice) {
+        checkSymbol(symbol);
+
+        int start = mSymbolStarts[symbol];
+
+        if (choice < 0 || start + choice >= mSymbolStarts[symbol + 1])
+            throw new IndexOutOfBoundsException("Choice " + choice + " of "
+                    + (mSymbolStarts[symbol + 1] - start));
+
+        return start + choice;
+    }
+}
@@ -26,6 +26,7 @@ import com.googlecode.leptonica.android.Pix;
 import com.googlecode.leptonica.android.ReadFile;
 
 import java.io.File;
+import java.util.Map;
 
 /**
  * Java interface for the Tesseract OCR engine. Does not implement all available
@@ -41,7 +42,9 @@ public class TessBaseAPI {
     /**
      * Used by the native implementation of the class.
      */
-    private int mNativeData;
+    private long mNativeData;
+
+    private volatile ProgressListener mProgressListener;
 
     static {
         System.loadLibrary("lept");
@@ -85,6 +88,30 @@ public class TessBaseAPI {
 
     /** Blacklist of characters to not recognize. */
     public static final String VAR_CHAR_BLACKLIST = "tessedit_char_blacklist";
+
+    /** Keep the classifier choices of each character, needed by getSymbolChoices(). */
+    public static final String VAR_SAVE_BLOB_CHOICES = "save_blob_choices";
+
+    /** Load the system word dictionary. Only takes effect at init. */
+    public static final String VAR_LOAD_SYSTEM_DAWG = "load_system_dawg";
+
+    /** Load the frequent word dictionary. Only takes effect at init. */
+    public static final String VAR_LOAD_FREQ_DAWG = "load_freq_dawg";
+
+    /** Load the unambiguous word dictionary. Only takes effect at init. */
+    public static final String VAR_LOAD_UNAMBIG_DAWG = "load_unambig_dawg";
+
+    /** Load the punctuation pattern dictionary. Only takes effect at init. */
+    public static final String VAR_LOAD_PUNC_DAWG = "load_punc_dawg";
+
+    /** Load the number pattern dictionary. Only takes effect at init. */
+    public static final String VAR_LOAD_NUMBER_DAWG = "load_number_dawg";
+
+    /** Load the fixed length dictionaries. Only takes effect at init. */
+    public static final String VAR_LOAD_FIXED_LENGTH_DAWGS = "load_fixed_length_dawgs";
+
+    /** Load the bigram dictionary. Only takes effect at init. */
+    public static final String VAR_LOAD_BIGRAM_DAWG = "load_bigram_dawg";
     
     /** Run Tesseract only - fastest */
     public static final int OEM_TESSERACT_ONLY = 0;
@@ -98,6 +125,27 @@ public class TessBaseAPI {
     /** Default OCR engine mode. */
     public static final int OEM_DEFAULT = 3;
 
+    /**
+     * Interface definition for a callback to be invoked while
+     * {@link TessBaseAPI#getUTF8Text(int)} recognizes the words.
+     */
+    public interface ProgressListener {
+        /**
+         * Called on the recognizing thread before each word of a recognition
+         * pass and once at the end. Tesseract makes two passes over the
+         * words, the percentage covers both. The listener may call stop() to
+         * end the recognition early.
+         *
+         * @param percent the progress of the recognition, 0 - 100
+         * @param left the left edge of the current word in image coordinates
+         * @param top the top edge of the current word
+         * @param right the right edge of the current word
+         * @param bottom the bottom edge of the current word; all edges are 0
+         *            at 100 percent
+         */
+        void onProgress(int percent, int left, int top, int right, int bottom);
+    }
+
     /**
      * Constructs an instance of TessBaseAPI.
      */
@@ -203,6 +251,82 @@ public class TessBaseAPI {
         return nativeInitOem(datapath, language, ocrEngineMode);	
     }
 
+    /**
+     * Initializes the Tesseract engine with the specified language model(s),
+     * config files and variables. Returns <code>true</code> on success.
+     * <p>
+     * Unlike setVariable(), the variables are set before the language data is
+     * loaded, so they can control what is loaded at all, e.g. turning off
+     * VAR_LOAD_SYSTEM_DAWG and VAR_LOAD_FREQ_DAWG skips the word dictionaries
+     * and saves their memory and loading time.
+     *
+     * @param datapath the parent directory of tessdata ending in a forward
+     *            slash
+     * @param language (optional) an ISO 639-3 string representing the language(s)
+     * @param ocrEngineMode the OCR engine mode to be set
+     * @param configs (optional) config files to read, either names of files in
+     *            tessdata/configs or absolute paths
+     * @param variables (optional) variables to set before initialization
+     * @return <code>true</code> on success
+     */
+    public boolean init(String datapath, String language, int ocrEngineMode, String[] configs,
+            Map<String, String> variables) {
+        if (datapath == null)
+            throw new IllegalArgumentException("Data path must not be null!");
+        if (!datapath.endsWith(File.separator))
+            datapath += File.separator;
+
+        File tessdata = new File(datapath + "tessdata");
+        if (!tessdata.exists() || !tessdata.isDirectory())
+            throw new IllegalArgumentException("Data path must contain subfolder tessdata!");
+
+        String[] names = null;
+        String[] values = null;
+
+        if (variables != null && !variables.isEmpty()) {
+            names = new String[variables.size()];
+            values = new String[variables.size()];
+
+            int i = 0;
+            for (Map.Entry<String, String> variable : variables.entrySet()) {
+                if (variable.getKey() == null || variable.getValue() == null)
+                    throw new IllegalArgumentException("Variables must not be null!");
+
+                names[i] = variable.getKey();
+                values[i] = variable.getValue();
+                i++;
+            }
+        }
+
+        return nativeInitParams(datapath, language, ocrEngineMode, configs, names, values);
+    }
+
+    /**
+     * Initializes the Tesseract engine with the language model(s) and settings
+     * of a profile. Returns <code>true</code> on success.
+     *
+     * @param datapath the parent directory of tessdata ending in a forward
+     *            slash
+     * @param language (optional) an ISO 639-3 string representing the language(s)
+     * @param profile the speed/accuracy tradeoff to initialize for
+     * @return <code>true</code> on success
+     * @see TessProfile
+     */
+    public boolean init(String datapath, String language, TessProfile profile) {
+        if (profile == null)
+            throw new IllegalArgumentException("Profile must not be null!");
+
+        if (!init(datapath, language, profile.getOcrEngineMode(), null,
+                profile.getInitVariables()))
+            return false;
+
+        for (Map.Entry<String, String> variable : profile.getVariables().entrySet()) {
+            setVariable(variable.getKey(), variable.getValue());
+        }
+
+        return true;
+    }
+
     /**
      * Returns the languages string used in the last valid initialization.
      * If the last initialization specified "deu+hin" then that will be
@@ -312,13 +436,12 @@ public class TessBaseAPI {
             throw new RuntimeException("Failed to read image file");
         }
 
-        nativeSetImagePix(image.getNativePix());
+        setOwnedImage(image);
     }
 
     /**
-     * Provides an image for Tesseract to recognize. Does not copy the image
-     * buffer. The source image must persist until after Recognize or
-     * GetUTF8Chars is called.
+     * Provides an image for Tesseract to recognize. The bitmap is converted to
+     * a Pix, so it may be recycled immediately after this call.
      *
      * @param bmp bitmap representation of the image
      */
@@ -329,7 +452,23 @@ public class TessBaseAPI {
             throw new RuntimeException("Failed to read bitmap");
         }
 
-        nativeSetImagePix(image.getNativePix());
+        setOwnedImage(image);
+    }
+
+    /**
+     * Hands a Pix that was created by this class over to Tesseract. The native
+     * code keeps its own clone of the image and releases it on the next
+     * setImage, clear or end, so our reference can be recycled right away
+     * instead of waiting for the garbage collector.
+     *
+     * @param image a Pix owned by this class
+     */
+    private void setOwnedImage(Pix image) {
+        try {
+            nativeSetImagePix(image.getNativePix());
+        } finally {
+            image.recycle();
+        }
     }
 
     /**
@@ -357,6 +496,17 @@ public class TessBaseAPI {
      * @param bpl bytes per line
      */
     public void setImage(byte[] imagedata, int width, int height, int bpp, int bpl) {
+        if (imagedata == null)
+            throw new IllegalArgumentException("Image data byte array must be non-null");
+        if (width <= 0)
+            throw new IllegalArgumentException("Image width must be greater than 0");
+        if (height <= 0)
+            throw new IllegalArgumentException("Image height must be greater than 0");
+        if (bpl < width * bpp)
+            throw new IllegalArgumentException("Bytes per line is less than width * bpp");
+        if (imagedata.length < (long) bpl * height)
+            throw new IllegalArgumentException("Array length does not match dimensions");
+
         nativeSetImageBytes(imagedata, width, height, bpp, bpl);
     }
 
@@ -372,6 +522,62 @@ public class TessBaseAPI {
         return text.trim();
     }
 
+    /**
+     * The recognized text is returned as a String which is coded as UTF8.
+     * Recognition can be aborted with {@link #stop()} from another thread and
+     * is abandoned when the timeout expires. The cancellation is checked
+     * before each word, the page layout analysis can't be interrupted.
+     * <p>
+     * If recognition was aborted the image and the partial results are
+     * cleared, so SetImage must be called again before the next recognition.
+     *
+     * @param timeoutMillis the maximum time the recognition may take in
+     *            milliseconds, or 0 to wait until it is finished or stopped
+     * @return the recognized text, or null if recognition was stopped, timed
+     *         out or failed
+     */
+    public String getUTF8Text(int timeoutMillis) {
+        if (timeoutMillis < 0)
+            throw new IllegalArgumentException("Timeout must be non-negative");
+
+        String text = nativeGetUTF8TextMonitored(timeoutMillis, mProgressListener != null);
+
+        return text == null ? null : text.trim();
+    }
+
+    /**
+     * Sets the listener that is informed about the progress of
+     * {@link #getUTF8Text(int)}. The other recognition methods don't report
+     * any progress.
+     *
+     * @param listener the listener, or null to remove it
+     */
+    public void setProgressListener(ProgressListener listener) {
+        mProgressListener = listener;
+    }
+
+    /**
+     * Called from native code during {@link #getUTF8Text(int)}.
+     */
+    private void onProgressValues(int percent, int left, int top, int right, int bottom) {
+        ProgressListener listener = mProgressListener;
+
+        if (listener != null)
+            listener.onProgress(percent, left, top, right, bottom);
+    }
+
+    /**
+     * Aborts the recognition of {@link #getUTF8Text(int)} that is currently
+     * running on another thread. If no recognition is running the next one
+     * is aborted right away, unless clear() is called first.
+     * <p>
+     * This method is safe to call from any thread as long as the instance has
+     * not been ended.
+     */
+    public void stop() {
+        nativeStop();
+    }
+
     /**
      * Returns the mean confidence of text recognition.
      *
@@ -381,6 +587,45 @@ public class TessBaseAPI {
         return nativeMeanConfidence();
     }
 
+    /**
+     * Recognizes several sub-rectangles of the current image one after
+     * another. The image is set only once and only the pixels inside the
+     * rectangles are thresholded and recognized, so there is no need to crop
+     * the source image into separate bitmaps. Call after SetImage.
+     * <p>
+     * Afterwards the recognition is restricted to the last rectangle.
+     * <p>
+     * Like {@link #getUTF8Text(int)} the recognition can be aborted with
+     * {@link #stop()}, the remaining rectangles are skipped then.
+     *
+     * @param regions the rectangles to recognize, in image coordinates
+     * @param confidences (optional) receives the mean confidence of each
+     *            region, must have at least as many elements as regions
+     * @return the recognized text of each region, or null if recognition was
+     *         stopped or failed
+     */
+    public String[] getUTF8Text(Rect[] regions, int[] confidences) {
+        if (regions == null)
+            throw new IllegalArgumentException("Regions must be non-null");
+        if (confidences != null && confidences.length < regions.length)
+            throw new IllegalArgumentException("Confidences array is too small");
+
+        String[] texts = new String[regions.length];
+
+        for (int i = 0; i < regions.length; i++) {
+            setRectangle(regions[i]);
+            texts[i] = getUTF8Text(0);
+
+            if (texts[i] == null)
+                return null;
+
+            if (confidences != null)
+                confidences[i] = meanConfidence();
+        }
+
+        return texts;
+    }
+
     /**
      * Returns all word confidences (between 0 and 100) in an array. The number
      * of confidences should correspond to the number of space-delimited words
@@ -399,6 +644,32 @@ public class TessBaseAPI {
         return conf;
     }
 
+    /**
+     * Returns the recognized words with their bounding boxes and
+     * confidences, in reading order. Recognizes the image first if that
+     * hasn't happened yet. Unlike getWords() and wordConfidences() this needs
+     * a single native call and creates no image per word.
+     *
+     * @return the words, or null if recognition failed
+     */
+    public WordResults getWordResults() {
+        return nativeGetWordResults();
+    }
+
+    /**
+     * Returns the candidate glyphs of every recognized symbol with their
+     * confidences. Recognizes the image first if that hasn't happened yet.
+     * <p>
+     * Tesseract only keeps the alternative choices if the variable
+     * {@link #VAR_SAVE_BLOB_CHOICES} is set to "T" before recognition,
+     * otherwise each symbol has just its best choice.
+     *
+     * @return the symbol choices, or null if recognition failed
+     */
+    public SymbolChoices getSymbolChoices() {
+        return nativeGetSymbolChoices();
+    }
+
     /**
      * Returns the result of page layout analysis as a Pixa, in reading order.
      * 
@@ -471,6 +742,9 @@ public class TessBaseAPI {
     
     private native boolean nativeInitOem(String datapath, String language, int mode);
 
+    private native boolean nativeInitParams(String datapath, String language, int mode,
+            String[] configs, String[] names, String[] values);
+
     private native String nativeGetInitLanguagesAsString();
     
     private native void nativeClear();
@@ -480,30 +754,38 @@ public class TessBaseAPI {
     private native void nativeSetImageBytes(
             byte[] imagedata, int width, int height, int bpp, int bpl);
 
-    private native void nativeSetImagePix(int nativePix);
+    private native void nativeSetImagePix(long nativePix);
 
     private native void nativeSetRectangle(int left, int top, int width, int height);
 
     private native String nativeGetUTF8Text();
 
+    private native String nativeGetUTF8TextMonitored(int timeoutMillis, boolean progress);
+
+    private native void nativeStop();
+
     private native int nativeMeanConfidence();
 
     private native int[] nativeWordConfidences();
 
+    private native WordResults nativeGetWordResults();
+
+    private native SymbolChoices nativeGetSymbolChoices();
+
     private native boolean nativeSetVariable(String var, String value);
 
     private native void nativeSetDebug(boolean debug);
 
     private native void nativeSetPageSegMode(int mode);
     
-    private native int nativeGetRegions();
+    private native long nativeGetRegions();
 
-    private native int nativeGetTextlines();
+    private native long nativeGetTextlines();
 
-    private native int nativeGetStrips();
+    private native long nativeGetStrips();
 
-    private native int nativeGetWords();
+    private native long nativeGetWords();
     
-    private native int nativeGetCharacters();
+    private native long nativeGetCharacters();
 
 }
@@ -0,0 +1,445 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.googlecode.tesseract.android;
+
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps a bounded number of initialized TessBaseAPI instances around so that
+ * the language data only has to be loaded once instead of once per image.
+ * <p>
+ * Engines are keyed by their {@link Config}. An engine obtained with
+ * {@link #acquire(Config)} must be handed back with {@link #release(TessBaseAPI)}
+ * once the caller is done with it. Released engines are cleared and kept for
+ * the next caller asking for the same configuration; end() is only called when
+ * an engine is evicted or the pool is closed.
+ * <p>
+ * All methods are thread-safe. A single engine must not be used by more than
+ * one thread at a time, which is guaranteed as long as it is only used between
+ * acquire() and release().
+ */
+public class TessEnginePool {
+    private static final String TAG = "TessEnginePool";
+
+    /** Default number of idle engines kept by the pool. */
+    public static final int DEFAULT_MAX_IDLE = 2;
+
+    /**
+     * Everything that is needed to initialize an engine. Two engines with equal
+     * configurations are interchangeable.
+     */
+    public static final class Config {
+        final String mDataPath;
+        final String mLanguage;
+        final int mOcrEngineMode;
+        final int mPageSegMode;
+        final String[] mConfigs;
+        final Map<String, String> mInitVariables;
+        final Map<String, String> mVariables;
+
+        /**
+         * Creates a configuration using the default engine mode, a single block
+         * page segmentation and no variables.
+         *
+         * @param datapath the parent directory of tessdata
+         * @param language an ISO 639-3 string representing the language(s)
+         */
+        public Config(String datapath, String language) {
+            this(datapath, language, TessBaseAPI.OEM_DEFAULT, TessBaseAPI.PSM_SINGLE_BLOCK, null);
+        }
+
+        /**
+         * Creates a configuration using the settings of a profile.
+         *
+         * @param datapath the parent directory of tessdata
+         * @param language an ISO 639-3 string representing the language(s)
+         * @param profile the speed/accuracy tradeoff to initialize for
+         * @param pageSegMode one of TessBaseAPI.PSM_*
+         */
+        public Config(String datapath, String language, TessProfile profile, int pageSegMode) {
+            this(datapath, language, profile.getOcrEngineMode(), pageSegMode, null,
+                    profile.getInitVariables(), profile.getVariables());
+        }
+
+        /**
+         * Creates a configuration.
+         *
+         * @param datapath the parent directory of tessdata
+         * @param language an ISO 639-3 string representing the language(s)
+         * @param ocrEngineMode one of TessBaseAPI.OEM_*
+         * @param pageSegMode one of TessBaseAPI.PSM_*
+         * @param variables (optional) variables to set after initialization
+         */
+        public Config(String datapath, String language, int ocrEngineMode, int pageSegMode,
+                Map<String, String> variables) {
+            this(datapath, language, ocrEngineMode, pageSegMode, null, null, variables);
+        }
+
+        /**
+         * Creates a configuration with config files and variables that are
+         * applied while the engine is initialized.
+         *
+         * @param datapath the parent directory of tessdata
+         * @param language an ISO 639-3 string representing the language(s)
+         * @param ocrEngineMode one of TessBaseAPI.OEM_*
+         * @param pageSegMode one of TessBaseAPI.PSM_*
+         * @param configs (optional) config files to read at initialization
+         * @param initVariables (optional) variables to set before the language
+         *            data is loaded
+         * @param variables (optional) variables to set after initialization
+         * @see TessBaseAPI#init(String, String, int, String[], Map)
+         */
+        public Config(String datapath, String language, int ocrEngineMode, int pageSegMode,
+                String[] configs, Map<String, String> initVariables,
+                Map<String, String> variables) {
+            if (datapath == null)
+                throw new IllegalArgumentException("Data path must not be null!");
+
+            mDataPath = datapath;
+            mLanguage = language;
+            mOcrEngineMode = ocrEngineMode;
+            mPageSegMode = pageSegMode;
+            mConfigs = configs == null ? new String[0] : configs.clone();
+            mInitVariables = copy(initVariables);
+            mVariables = copy(variables);
+        }
+
+        private static Map<String, String> copy(Map<String, String> variables) {
+            if (variables == null || variables.isEmpty())
+                return Collections.emptyMap();
+
+            return Collections.unmodifiableMap(new TreeMap<String, String>(variables));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Config))
+                return false;
+
+            Config other = (Config) o;
+
+            return mDataPath.equals(other.mDataPath)
+                    && (mLanguage == null ? other.mLanguage == null
+                            : mLanguage.equals(other.mLanguage))
+                    && mOcrEngineMode == other.mOcrEngineMode
+                    && mPageSegMode == other.mPageSegMode
+                    && Arrays.equals(mConfigs, other.mConfigs)
+                    && mInitVariables.equals(other.mInitVariables)
+                    && mVariables.equals(other.mVariables);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mDataPath.hashCode();
+            result = 31 * result + (mLanguage == null ? 0 : mLanguage.hashCode());
+            result = 31 * result + mOcrEngineMode;
+            result = 31 * result + mPageSegMode;
+            result = 31 * result + Arrays.hashCode(mConfigs);
+            result = 31 * result + mInitVariables.hashCode();
+            result = 31 * result + mVariables.hashCode();
+
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return mLanguage + "@" + mDataPath + " oem=" + mOcrEngineMode + " psm="
+                    + mPageSegMode + " configs=" + Arrays.toString(mConfigs) + " init="
+                    + mInitVariables + " vars=" + mVariables;
+        }
+    }
+
+    private static final class Entry {
+        final Config config;
+        final TessBaseAPI api;
+
+        Entry(Config config, TessBaseAPI api) {
+            this.config = config;
+            this.api = api;
+        }
+    }
+
+    private final int mMaxIdle;
+
+    /** Idle engines, most recently released first. */
+    private final LinkedList<Entry> mIdle = new LinkedList<Entry>();
+
+    /** Engines currently handed out, mapped to their configuration. */
+    private final Map<TessBaseAPI, Config> mLeased = new IdentityHashMap<TessBaseAPI, Config>();
+
+    /** Number of engines preload() is still initializing, per configuration. */
+    private final Map<Config, Integer> mLoading = new HashMap<Config, Integer>();
+
+    private boolean mClosed;
+
+    /**
+     * Creates a pool that keeps up to DEFAULT_MAX_IDLE idle engines.
+     */
+    public TessEnginePool() {
+        this(DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * Creates a pool that keeps up to maxIdle idle engines. Each engine holds
+     * the complete language data in memory, so keep this number small.
+     *
+     * @param maxIdle the maximum number of idle engines, at least 1
+     */
+    public TessEnginePool(int maxIdle) {
+        if (maxIdle < 1)
+            throw new IllegalArgumentException("Pool must keep at least one engine");
+
+        mMaxIdle = maxIdle;
+    }
+
+    /**
+     * Returns an initialized engine for the given configuration. Reuses an idle
+     * engine if there is one and waits for one that preload() is initializing,
+     * otherwise a new engine is created and initialized on the calling thread.
+     *
+     * @param config the configuration of the engine
+     * @return an initialized engine that must be handed back using release()
+     */
+    public TessBaseAPI acquire(Config config) {
+        if (config == null)
+            throw new IllegalArgumentException("Config must be non-null");
+
+        synchronized (this) {
+            if (mClosed)
+                throw new IllegalStateException("Pool has been closed");
+
+            while (true) {
+                for (Iterator<Entry> it = mIdle.iterator(); it.hasNext();) {
+                    Entry entry = it.next();
+
+                    if (entry.config.equals(config)) {
+                        it.remove();
+                        mLeased.put(entry.api, entry.config);
+
+                        return entry.api;
+                    }
+                }
+
+                if (loadingCount(config) == 0)
+                    break;
+
+                // Loading a second engine wouldn't be any faster
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+
+                if (mClosed)
+                    throw new IllegalStateException("Pool has been closed");
+            }
+        }
+
+        // Loading the language data takes a while, don't hold the lock for it.
+        TessBaseAPI api = create(config);
+
+        synchronized (this) {
+            if (mClosed) {
+                api.end();
+                throw new IllegalStateException("Pool has been closed");
+            }
+
+            mLeased.put(api, config);
+        }
+
+        return api;
+    }
+
+    /**
+     * Hands an engine obtained from acquire() back to the pool. The engine is
+     * cleared and must not be used by the caller afterwards.
+     *
+     * @param api the engine to give back
+     */
+    public void release(TessBaseAPI api) {
+        if (api == null)
+            return;
+
+        Config config;
+
+        synchronized (this) {
+            config = mLeased.remove(api);
+        }
+
+        if (config == null)
+            throw new IllegalArgumentException("Engine was not acquired from this pool");
+
+        api.clear();
+
+        Entry evicted = null;
+
+        synchronized (this) {
+            if (mClosed) {
+                evicted = new Entry(config, api);
+            } else {
+                mIdle.addFirst(new Entry(config, api));
+
+                if (mIdle.size() > mMaxIdle) {
+                    evicted = mIdle.removeLast();
+                }
+            }
+        }
+
+        if (evicted != null) {
+            evicted.api.end();
+        }
+    }
+
+    /**
+     * Initializes engines for the given configuration until count idle
+     * engines with this configuration are available, so that the first
+     * acquire() calls don't have to wait for the language data. Engines that
+     * are already idle or being preloaded count, and no more than count
+     * engines are created, even if acquire() takes them meanwhile. Should not
+     * be called on the UI thread.
+     *
+     * @param config the configuration of the engines
+     * @param count the number of idle engines to provide
+     */
+    public void preload(Config config, int count) {
+        if (config == null)
+            throw new IllegalArgumentException("Config must be non-null");
+
+        int missing;
+
+        synchronized (this) {
+            if (mClosed)
+                return;
+
+            missing = Math.min(count, mMaxIdle) - idleCount(config) - loadingCount(config);
+
+            if (missing <= 0)
+                return;
+
+            setLoadingCount(config, loadingCount(config) + missing);
+        }
+
+        for (; missing > 0; missing--) {
+            TessBaseAPI api = null;
+            boolean keep;
+
+            try {
+                api = create(config);
+            } finally {
+                synchronized (this) {
+                    // On failure or close the engines not created yet are given
+                    // up too, so acquire() calls waiting for them create their own
+                    keep = api != null && !mClosed;
+                    setLoadingCount(config, loadingCount(config) - (keep ? 1 : missing));
+
+                    if (keep) {
+                        mIdle.addLast(new Entry(config, api));
+                    }
+
+                    notifyAll();
+                }
+            }
+
+            if (!keep) {
+                api.end();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Ends all idle engines. Engines that are still acquired are ended as soon
+     * as they are released. The pool can't be used after calling this method.
+     */
+    public void close() {
+        LinkedList<Entry> idle;
+
+        synchronized (this) {
+            mClosed = true;
+            idle = new LinkedList<Entry>(mIdle);
+            mIdle.clear();
+            notifyAll(); // acquire() calls waiting for a preloaded engine
+        }
+
+        for (Entry entry : idle) {
+            entry.api.end();
+        }
+    }
+
+    private synchronized int idleCount(Config config) {
+        int count = 0;
+
+        for (Entry entry : mIdle) {
+            if (entry.config.equals(config))
+                count++;
+        }
+
+        return count;
+    }
+
+    private synchronized int loadingCount(Config config) {
+        Integer count = mLoading.get(config);
+
+        return count == null ? 0 : count;
+    }
+
+    private synchronized void setLoadingCount(Config config, int count) {
+        if (count > 0) {
+            mLoading.put(config, count);
+        } else {
+            mLoading.remove(config);
+        }
+    }
+
+    private static TessBaseAPI create(Config config) {
+        TessBaseAPI api = new TessBaseAPI();
+
+        boolean initialized;
+
+        if (config.mConfigs.length == 0 && config.mInitVariables.isEmpty()) {
+            initialized = api.init(config.mDataPath, config.mLanguage, config.mOcrEngineMode);
+        } else {
+            initialized = api.init(config.mDataPath, config.mLanguage, config.mOcrEngineMode,
+                    config.mConfigs, config.mInitVariables);
+        }
+
+        if (!initialized) {
+            api.end();
+            throw new RuntimeException("Failed to initialize engine for " + config);
+        }
+
+        api.setPageSegMode(config.mPageSegMode);
+
+        for (Map.Entry<String, String> variable : config.mVariables.entrySet()) {
+            if (!api.setVariable(variable.getKey(), variable.getValue())) {
+                Log.w(TAG, "Unknown variable " + variable.getKey());
+            }
+        }
+
+        return api;
+    }
+}
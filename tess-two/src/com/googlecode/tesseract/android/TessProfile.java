@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.googlecode.tesseract.android;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Named tradeoffs between speed, memory and accuracy for initializing an
+ * engine. A profile picks the OCR engine mode, the variables that have to be
+ * set before the language data is loaded (which dictionaries to load at all)
+ * and the variables that are set afterwards.
+ *
+ * @see TessBaseAPI#init(String, String, TessProfile)
+ */
+public enum TessProfile {
+    /**
+     * Tesseract only, without any dictionaries and without the adaptive
+     * classifier. Loads the least data and initializes fastest. Best suited
+     * for short texts that aren't dictionary words anyway, like names or
+     * numbers.
+     */
+    FAST(TessBaseAPI.OEM_TESSERACT_ONLY, new String[] {
+            TessBaseAPI.VAR_LOAD_SYSTEM_DAWG, "F",
+            TessBaseAPI.VAR_LOAD_FREQ_DAWG, "F",
+            TessBaseAPI.VAR_LOAD_UNAMBIG_DAWG, "F",
+            TessBaseAPI.VAR_LOAD_PUNC_DAWG, "F",
+            TessBaseAPI.VAR_LOAD_NUMBER_DAWG, "F",
+            TessBaseAPI.VAR_LOAD_FIXED_LENGTH_DAWGS, "F",
+            TessBaseAPI.VAR_LOAD_BIGRAM_DAWG, "F"
+    }, new String[] {
+            "classify_enable_learning", "F",
+            "tessedit_enable_doc_dict", "F"
+    }),
+
+    /**
+     * Tesseract only, with the system word dictionary but without the
+     * frequent word, fixed length and bigram dictionaries.
+     */
+    DEFAULT(TessBaseAPI.OEM_TESSERACT_ONLY, new String[] {
+            TessBaseAPI.VAR_LOAD_FREQ_DAWG, "F",
+            TessBaseAPI.VAR_LOAD_FIXED_LENGTH_DAWGS, "F",
+            TessBaseAPI.VAR_LOAD_BIGRAM_DAWG, "F"
+    }, new String[0]),
+
+    /**
+     * The default engine mode (including Cube if its data is installed) with
+     * all dictionaries. Uses the most memory and initializes slowest.
+     */
+    ACCURATE(TessBaseAPI.OEM_DEFAULT, new String[0], new String[0]);
+
+    private final int mOcrEngineMode;
+    private final Map<String, String> mInitVariables;
+    private final Map<String, String> mVariables;
+
+    private TessProfile(int ocrEngineMode, String[] initVariables, String[] variables) {
+        mOcrEngineMode = ocrEngineMode;
+        mInitVariables = toMap(initVariables);
+        mVariables = toMap(variables);
+    }
+
+    /**
+     * Returns the OCR engine mode of this profile.
+     *
+     * @return one of TessBaseAPI.OEM_*
+     */
+    public int getOcrEngineMode() {
+        return mOcrEngineMode;
+    }
+
+    /**
+     * Returns the variables that have to be set before the language data is
+     * loaded.
+     *
+     * @return an unmodifiable map of variable names to values
+     */
+    public Map<String, String> getInitVariables() {
+        return mInitVariables;
+    }
+
+    /**
+     * Returns the variables that are set after initialization.
+     *
+     * @return an unmodifiable map of variable names to values
+     */
+    public Map<String, String> getVariables() {
+        return mVariables;
+    }
+
+    private static Map<String, String> toMap(String[] pairs) {
+        Map<String, String> map = new TreeMap<String, String>();
+
+        for (int i = 0; i < pairs.length; i += 2) {
+            map.put(pairs[i], pairs[i + 1]);
+        }
+
+        return Collections.unmodifiableMap(map);
+    }
+}
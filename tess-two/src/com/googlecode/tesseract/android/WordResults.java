@@ -0,0 +1,154 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.googlecode.tesseract.android;
+
+import android.graphics.Rect;
+
+/**
+ * The recognized words of an image with their bounding boxes and confidences,
+ * in reading order. All words are fetched in a single native call and kept in
+ * packed arrays, no per-word objects are created unless requested.
+ *
+ * @see TessBaseAPI#getWordResults()
+ */
+public class WordResults {
+    private final String mText;
+    private final int[] mOffsets;
+    private final int[] mBoxes;
+    private final float[] mConfidences;
+
+    /**
+     * Called from native code.
+     *
+     * @param text the words separated by single spaces
+     * @param offsets the start of each word in text, plus one entry past the
+     *            end of the last word and its separator
+     * @param boxes left, top, right and bottom of each word
+     * @param confidences the confidence of each word
+     */
+    WordResults(String text, int[] offsets, int[] boxes, float[] confidences) {
+        mText = text;
+        mOffsets = offsets;
+        mBoxes = boxes;
+        mConfidences = confidences;
+    }
+
+    /**
+     * Returns the number of words.
+     *
+     * @return the number of words
+     */
+    public int size() {
+        return mConfidences.length;
+    }
+
+    /**
+     * Returns all words separated by single spaces.
+     *
+     * @return the text of all words
+     */
+    public String getText() {
+        return mText;
+    }
+
+    /**
+     * Returns the text of a word.
+     *
+     * @param index the index of the word
+     * @return the text of the word
+     */
+    public String getWord(int index) {
+        checkIndex(index);
+
+        return mText.substring(mOffsets[index], mOffsets[index + 1] - 1);
+    }
+
+    /**
+     * Returns the start of a word in the text returned by getText().
+     *
+     * @param index the index of the word
+     * @return the offset of the first character of the word
+     */
+    public int getWordStart(int index) {
+        checkIndex(index);
+
+        return mOffsets[index];
+    }
+
+    /**
+     * Returns the end of a word in the text returned by getText().
+     *
+     * @param index the index of the word
+     * @return the offset after the last character of the word
+     */
+    public int getWordEnd(int index) {
+        checkIndex(index);
+
+        return mOffsets[index + 1] - 1;
+    }
+
+    /**
+     * Returns the confidence of a word.
+     *
+     * @param index the index of the word
+     * @return the confidence (between 0 and 100)
+     */
+    public float getConfidence(int index) {
+        checkIndex(index);
+
+        return mConfidences[index];
+    }
+
+    /**
+     * Fills the bounding box of a word in image coordinates into a Rect.
+     *
+     * @param index the index of the word
+     * @param rect the Rect to fill
+     * @return rect, for convenience
+     */
+    public Rect getBoundingBox(int index, Rect rect) {
+        checkIndex(index);
+
+        int i = index * 4;
+        rect.set(mBoxes[i], mBoxes[i + 1], mBoxes[i + 2], mBoxes[i + 3]);
+
+        return rect;
+    }
+
+    /**
+     * Returns the packed bounding boxes of all words as left, top, right and
+     * bottom of the first word, followed by the second word and so on. The
+     * array must not be modified.
+     *
+     * @return the bounding boxes of all words
+     */
+    public int[] getBoundingBoxes() {
+        return mBoxes;
+    }
+
+    /**
+     * Returns the confidences of all words. The array must not be modified.
+     *
+     * @return the confidences of all words
+     */
+    public float[] getConfidences() {
+        return mConfidences;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mConfidences.length)
+            throw new IndexOutOfBoundsException("Word " + index + " of " + mConfidences.length);
+    }
+}